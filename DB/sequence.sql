@@ -1,7 +1,30 @@
 create sequence ID_SEQ
-increment by 1
+increment by 50
 start with 1
 nomaxvalue
 nocycle
-nocache
-order;
\ No newline at end of file
+cache 20
+noorder;
+
+-- INCREMENT BY must match Task.ID_BLOCK_SIZE.
+
+-- Existing schemas: do NOT just ALTER SEQUENCE ID_SEQ INCREMENT BY 50. The
+-- old sequence has already handed out its last value N, the next NEXTVAL
+-- would be N+50, and the pooled optimizer (and JdbcTaskManager) take each
+-- NEXTVAL as the end of the block below it, so [N, N+50) would be handed
+-- out again and N reused. Recreate the sequence past every id in use
+-- instead, so the first block starts at MAX(TASK_ID)+1:
+--
+-- DECLARE
+--   start_with NUMBER;
+-- BEGIN
+--   SELECT GREATEST(NVL((SELECT MAX(TASK_ID) FROM TASK), 0),
+--                   NVL((SELECT MAX(TASK_ID) FROM TASK_ARCHIVE), 0)) + 51
+--     INTO start_with FROM DUAL;
+--   EXECUTE IMMEDIATE 'DROP SEQUENCE ID_SEQ';
+--   EXECUTE IMMEDIATE 'CREATE SEQUENCE ID_SEQ INCREMENT BY 50 START WITH '
+--     || start_with || ' NOMAXVALUE NOCYCLE CACHE 20 NOORDER';
+-- END;
+-- /
+--
+-- Stop the application while this runs, so no node inserts in between.
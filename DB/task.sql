@@ -2,19 +2,81 @@ DROP TABLE TASK CASCADE CONSTRAINTS;
 
 CREATE TABLE TASK
 (
-  TASK_ID      INTEGER NOT NULL,
+  TASK_ID      NUMBER(19) NOT NULL,
   TASK_NAME    VARCHAR2(30 BYTE),
   ASSIGNEE     VARCHAR2(30 BYTE),
   DESCRIPTION  VARCHAR2(150 BYTE),
-  D_DATE       DATE
+  D_DATE       DATE,
+  CONSTRAINT TASK_PK PRIMARY KEY (TASK_ID)
 );
 
+-- TASK_ID is the second column so the keyset pages of
+-- findByAssignee/findByDateRange seek within one index range.
+CREATE INDEX TASK_ASSIGNEE_IX ON TASK (ASSIGNEE, TASK_ID);
+CREATE INDEX TASK_D_DATE_IX ON TASK (D_DATE, TASK_ID);
+
+-- Existing schemas: ALTER TABLE TASK ADD CONSTRAINT TASK_PK PRIMARY KEY (TASK_ID);
+-- followed by the two CREATE INDEX statements above.
+-- TASK_ID is NUMBER(19) to hold the ids of task.id.generator=time.
+-- Existing schemas: ALTER TABLE TASK MODIFY (TASK_ID NUMBER(19));
+-- ALTER TABLE TASK_ARCHIVE MODIFY (TASK_ID NUMBER(19));
+
+-- Tasks moved out of TASK by the archiver once their D_DATE is older than
+-- task.archive.max.age.days. Existing schemas: run these two.
+DROP TABLE TASK_ARCHIVE CASCADE CONSTRAINTS;
+
+CREATE TABLE TASK_ARCHIVE
+(
+  TASK_ID      NUMBER(19) NOT NULL,
+  TASK_NAME    VARCHAR2(30 BYTE),
+  ASSIGNEE     VARCHAR2(30 BYTE),
+  DESCRIPTION  VARCHAR2(150 BYTE),
+  D_DATE       DATE,
+  ARCHIVED     TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL,
+  CONSTRAINT TASK_ARCHIVE_PK PRIMARY KEY (TASK_ID)
+);
+
+-- Task counts per assignee and per start day, kept up to date by every
+-- write so the summary does not scan TASK. Existing schemas: run these four,
+-- then recount from the summary page.
+DROP TABLE TASK_COUNT_ASSIGNEE CASCADE CONSTRAINTS;
+
+CREATE TABLE TASK_COUNT_ASSIGNEE
+(
+  ASSIGNEE  VARCHAR2(30 BYTE) NOT NULL,
+  TASKS     INTEGER NOT NULL,
+  CONSTRAINT TASK_COUNT_ASSIGNEE_PK PRIMARY KEY (ASSIGNEE)
+);
+
+DROP TABLE TASK_COUNT_DAY CASCADE CONSTRAINTS;
+
+CREATE TABLE TASK_COUNT_DAY
+(
+  D_DATE    DATE NOT NULL,
+  TASKS     INTEGER NOT NULL,
+  CONSTRAINT TASK_COUNT_DAY_PK PRIMARY KEY (D_DATE)
+);
+
+-- One row whose VERSION every write to TASK raises in its transaction; the
+-- task list's ETag is built from it. Existing schemas: run these two.
+DROP TABLE TASK_VERSION CASCADE CONSTRAINTS;
+
+CREATE TABLE TASK_VERSION
+(
+  ID        INTEGER NOT NULL,
+  VERSION   NUMBER(19) NOT NULL,
+  MODIFIED  TIMESTAMP NOT NULL,
+  CONSTRAINT TASK_VERSION_PK PRIMARY KEY (ID)
+);
+
+INSERT INTO TASK_VERSION (ID, VERSION, MODIFIED) VALUES (1, 0, SYSTIMESTAMP);
+
 create sequence ID_SEQ
-increment by 1
+increment by 50
 start with 1
 nomaxvalue
 nocycle
-nocache
-order;
+cache 20
+noorder;
 
-commit;
\ No newline at end of file
+commit;
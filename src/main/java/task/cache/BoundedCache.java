@@ -0,0 +1,178 @@
+package task.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The entries of one second-level cache region, at most a fixed number of
+ * them. The least recently used entry is evicted when the region is full,
+ * and entries older than the time-to-live are treated as absent.
+ */
+public class BoundedCache {
+
+    private static class Entry {
+
+        final Object value;
+
+        final long   expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private final String                       regionName;
+
+    private final int                          maxEntries;
+
+    private final long                         ttlMillis;
+
+    private final LinkedHashMap<Object, Entry> entries;
+
+    private long                               hits;
+
+    private long                               misses;
+
+    private long                               puts;
+
+    private long                               evictions;
+
+    private long                               expirations;
+
+    /**
+     * @param regionName name of the region
+     * @param maxEntries maximum number of entries, or 0 for no limit
+     * @param ttlSeconds seconds an entry stays valid, or 0 for no limit
+     */
+    public BoundedCache(String regionName, final int maxEntries, int ttlSeconds) {
+        this.regionName = regionName;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, BoundedCache.Entry> eldest) {
+                if (maxEntries > 0 && size() > maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the value, or null if there is none or it has expired; counted
+     *         as a hit or a miss
+     */
+    public synchronized Object get(Object key) {
+        Object value = peek(key);
+        if (value == null) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * @return the value, or null if there is none or it has expired; not
+     *         counted, for callers that decide themselves whether it is a hit
+     */
+    public synchronized Object peek(Object key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.remove(key);
+            expirations++;
+            return null;
+        }
+        return entry.value;
+    }
+
+    synchronized void hit() {
+        hits++;
+    }
+
+    synchronized void miss() {
+        misses++;
+    }
+
+    public synchronized long getElementCountInMemory() {
+        return entries.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized long getExpirationCount() {
+        return expirations;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getPutCount() {
+        return puts;
+    }
+
+    public String getRegionName() {
+        return regionName;
+    }
+
+    public int getTtlSeconds() {
+        return (int) (ttlMillis / 1000);
+    }
+
+    public synchronized void put(Object key, Object value) {
+        long expires = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+        entries.put(key, new Entry(value, expires));
+        puts++;
+    }
+
+    public synchronized void remove(Object key) {
+        entries.remove(key);
+    }
+
+    /**
+     * @return a copy of the entries that have not expired
+     */
+    public synchronized Map<Object, Object> toMap() {
+        Map<Object, Object> copy = new HashMap<Object, Object>();
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Object, Entry>> i = entries.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Object, Entry> entry = i.next();
+            if (entry.getValue().expires >= now) {
+                copy.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedCache(" + regionName + ")";
+    }
+}
@@ -0,0 +1,89 @@
+package task.cache;
+
+import org.hibernate.cache.CacheDataDescription;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.CollectionRegion;
+import org.hibernate.cache.access.AccessType;
+import org.hibernate.cache.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.access.SoftLock;
+
+/**
+ * A collection region. Collections are never updated in the cache, only
+ * locked, dropped and loaded again.
+ */
+class BoundedCollectionRegion extends BoundedTransactionalRegion implements CollectionRegion {
+
+    private final CollectionRegionAccessStrategy access = new CollectionRegionAccessStrategy() {
+
+        @Override
+        public CollectionRegion getRegion() {
+            return BoundedCollectionRegion.this;
+        }
+
+        @Override
+        public Object get(Object key, long txTimestamp) throws CacheException {
+            return BoundedCollectionRegion.this.get(key, txTimestamp);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version) throws CacheException {
+            return putFromLoad(key, value, txTimestamp, version, false);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version, boolean minimalPutOverride) throws CacheException {
+            return BoundedCollectionRegion.this.putFromLoad(key, value, txTimestamp, version, minimalPutOverride);
+        }
+
+        @Override
+        public SoftLock lockItem(Object key, Object version) throws CacheException {
+            return BoundedCollectionRegion.this.lockItem(key);
+        }
+
+        @Override
+        public SoftLock lockRegion() throws CacheException {
+            evictAll();
+            return null;
+        }
+
+        @Override
+        public void unlockItem(Object key, SoftLock lock) throws CacheException {
+            BoundedCollectionRegion.this.unlockItem(key, lock);
+        }
+
+        @Override
+        public void unlockRegion(SoftLock lock) throws CacheException {
+            evictAll();
+        }
+
+        @Override
+        public void remove(Object key) throws CacheException {
+            BoundedCollectionRegion.this.remove(key);
+        }
+
+        @Override
+        public void removeAll() throws CacheException {
+            evictAll();
+        }
+
+        @Override
+        public void evict(Object key) throws CacheException {
+            BoundedCollectionRegion.this.evict(key);
+        }
+
+        @Override
+        public void evictAll() throws CacheException {
+            BoundedCollectionRegion.this.evictAll();
+        }
+    };
+
+    BoundedCollectionRegion(BoundedCache cache, CacheDataDescription metadata) {
+        super(cache, metadata);
+    }
+
+    @Override
+    public CollectionRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+        checkAccessType(accessType);
+        return access;
+    }
+}
@@ -0,0 +1,36 @@
+package task.cache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.QueryResultsRegion;
+import org.hibernate.cache.TimestampsRegion;
+
+/**
+ * A query results or update timestamps region: plain gets and puts, whose
+ * consistency the query cache checks itself against the timestamps.
+ */
+class BoundedDataRegion extends BoundedRegion implements QueryResultsRegion, TimestampsRegion {
+
+    BoundedDataRegion(BoundedCache cache) {
+        super(cache);
+    }
+
+    @Override
+    public void evict(Object key) throws CacheException {
+        cache.remove(key);
+    }
+
+    @Override
+    public void evictAll() throws CacheException {
+        cache.clear();
+    }
+
+    @Override
+    public Object get(Object key) throws CacheException {
+        return cache.get(key);
+    }
+
+    @Override
+    public void put(Object key, Object value) throws CacheException {
+        cache.put(key, value);
+    }
+}
@@ -0,0 +1,110 @@
+package task.cache;
+
+import org.hibernate.cache.CacheDataDescription;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.EntityRegion;
+import org.hibernate.cache.access.AccessType;
+import org.hibernate.cache.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.access.SoftLock;
+
+/**
+ * An entity region, such as task.domain.Task.
+ */
+class BoundedEntityRegion extends BoundedTransactionalRegion implements EntityRegion {
+
+    private final EntityRegionAccessStrategy access = new EntityRegionAccessStrategy() {
+
+        @Override
+        public EntityRegion getRegion() {
+            return BoundedEntityRegion.this;
+        }
+
+        @Override
+        public Object get(Object key, long txTimestamp) throws CacheException {
+            return BoundedEntityRegion.this.get(key, txTimestamp);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version) throws CacheException {
+            return putFromLoad(key, value, txTimestamp, version, false);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version, boolean minimalPutOverride) throws CacheException {
+            return BoundedEntityRegion.this.putFromLoad(key, value, txTimestamp, version, minimalPutOverride);
+        }
+
+        @Override
+        public SoftLock lockItem(Object key, Object version) throws CacheException {
+            return BoundedEntityRegion.this.lockItem(key);
+        }
+
+        @Override
+        public SoftLock lockRegion() throws CacheException {
+            evictAll();
+            return null;
+        }
+
+        @Override
+        public void unlockItem(Object key, SoftLock lock) throws CacheException {
+            BoundedEntityRegion.this.unlockItem(key, lock);
+        }
+
+        @Override
+        public void unlockRegion(SoftLock lock) throws CacheException {
+            evictAll();
+        }
+
+        /** Read-write caches an insert once it has committed. */
+        @Override
+        public boolean insert(Object key, Object value, Object version) throws CacheException {
+            return false;
+        }
+
+        @Override
+        public boolean afterInsert(Object key, Object value, Object version) throws CacheException {
+            return BoundedEntityRegion.this.afterInsert(key, value, version);
+        }
+
+        /** Read-write caches an update once it has committed. */
+        @Override
+        public boolean update(Object key, Object value, Object currentVersion, Object previousVersion) throws CacheException {
+            return false;
+        }
+
+        @Override
+        public boolean afterUpdate(Object key, Object value, Object currentVersion, Object previousVersion, SoftLock lock) throws CacheException {
+            return BoundedEntityRegion.this.afterUpdate(key, value, currentVersion, lock);
+        }
+
+        @Override
+        public void remove(Object key) throws CacheException {
+            BoundedEntityRegion.this.remove(key);
+        }
+
+        @Override
+        public void removeAll() throws CacheException {
+            evictAll();
+        }
+
+        @Override
+        public void evict(Object key) throws CacheException {
+            BoundedEntityRegion.this.evict(key);
+        }
+
+        @Override
+        public void evictAll() throws CacheException {
+            BoundedEntityRegion.this.evictAll();
+        }
+    };
+
+    BoundedEntityRegion(BoundedCache cache, CacheDataDescription metadata) {
+        super(cache, metadata);
+    }
+
+    @Override
+    public EntityRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+        checkAccessType(accessType);
+        return access;
+    }
+}
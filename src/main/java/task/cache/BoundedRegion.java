@@ -0,0 +1,73 @@
+package task.cache;
+
+import java.util.Map;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.Region;
+import org.hibernate.cache.Timestamper;
+
+/**
+ * A Hibernate cache region kept in a {@link BoundedCache}.
+ */
+abstract class BoundedRegion implements Region {
+
+    /** Sixty seconds, in the units of {@link Timestamper}. */
+    static final int             TIMEOUT = Timestamper.ONE_MS * 60000;
+
+    protected final BoundedCache cache;
+
+    BoundedRegion(BoundedCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return cache.peek(key) != null;
+    }
+
+    @Override
+    public void destroy() throws CacheException {
+        cache.clear();
+    }
+
+    @Override
+    public long getElementCountInMemory() {
+        return cache.getElementCountInMemory();
+    }
+
+    @Override
+    public long getElementCountOnDisk() {
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return cache.getRegionName();
+    }
+
+    @Override
+    public long getSizeInMemory() {
+        return -1;
+    }
+
+    @Override
+    public int getTimeout() {
+        return TIMEOUT;
+    }
+
+    @Override
+    public long nextTimestamp() {
+        return Timestamper.next();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Map toMap() {
+        return cache.toMap();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + getName() + ")";
+    }
+}
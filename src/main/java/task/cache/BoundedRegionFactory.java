@@ -0,0 +1,114 @@
+package task.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.cache.CacheDataDescription;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.CollectionRegion;
+import org.hibernate.cache.EntityRegion;
+import org.hibernate.cache.QueryResultsRegion;
+import org.hibernate.cache.RegionFactory;
+import org.hibernate.cache.TimestampsRegion;
+import org.hibernate.cache.Timestamper;
+import org.hibernate.cache.access.AccessType;
+import org.hibernate.cfg.Settings;
+
+/**
+ * Builds the second-level cache regions for Hibernate, each on a
+ * {@link BoundedCache} sized from the Hibernate properties
+ *
+ * <pre>
+ * task.cache.&lt;region&gt;.max_entries
+ * task.cache.&lt;region&gt;.ttl_seconds
+ * </pre>
+ *
+ * falling back to task.cache.default.*. The update timestamps region is never
+ * bounded, because losing its entries would let stale query results through.
+ */
+public class BoundedRegionFactory implements RegionFactory {
+
+    private static final String                              PREFIX  = "task.cache.";
+
+    private static final ConcurrentMap<String, BoundedCache> REGIONS = new ConcurrentHashMap<String, BoundedCache>();
+
+    /**
+     * @return the regions built so far, for statistics
+     */
+    public static Collection<BoundedCache> getRegions() {
+        return Collections.unmodifiableCollection(REGIONS.values());
+    }
+
+    @Override
+    public CollectionRegion buildCollectionRegion(String regionName, Properties properties, CacheDataDescription metadata) throws CacheException {
+        return new BoundedCollectionRegion(buildCache(regionName, properties), metadata);
+    }
+
+    @Override
+    public EntityRegion buildEntityRegion(String regionName, Properties properties, CacheDataDescription metadata) throws CacheException {
+        return new BoundedEntityRegion(buildCache(regionName, properties), metadata);
+    }
+
+    @Override
+    public QueryResultsRegion buildQueryResultsRegion(String regionName, Properties properties) throws CacheException {
+        return new BoundedDataRegion(buildCache(regionName, properties));
+    }
+
+    @Override
+    public TimestampsRegion buildTimestampsRegion(String regionName, Properties properties) throws CacheException {
+        BoundedCache cache = new BoundedCache(regionName, 0, 0);
+        REGIONS.put(regionName, cache);
+        return new BoundedDataRegion(cache);
+    }
+
+    private BoundedCache buildCache(String regionName, Properties properties) {
+        int maxEntries = getInt(properties, regionName, "max_entries", 10000);
+        int ttlSeconds = getInt(properties, regionName, "ttl_seconds", 600);
+        BoundedCache cache = new BoundedCache(regionName, maxEntries, ttlSeconds);
+        REGIONS.put(regionName, cache);
+        return cache;
+    }
+
+    private int getInt(Properties properties, String regionName, String setting, int defaultValue) {
+        String value = properties.getProperty(PREFIX + regionName + "." + setting);
+        if (value == null) {
+            value = properties.getProperty(PREFIX + "default." + setting);
+        }
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new CacheException("Invalid " + PREFIX + regionName + "." + setting + ": " + value, e);
+        }
+    }
+
+    @Override
+    public AccessType getDefaultAccessType() {
+        return AccessType.READ_WRITE;
+    }
+
+    @Override
+    public boolean isMinimalPutsEnabledByDefault() {
+        return false;
+    }
+
+    @Override
+    public long nextTimestamp() {
+        return Timestamper.next();
+    }
+
+    @Override
+    public void start(Settings settings, Properties properties) throws CacheException {
+    }
+
+    @Override
+    public void stop() {
+        REGIONS.clear();
+    }
+}
@@ -0,0 +1,210 @@
+package task.cache;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.cache.CacheDataDescription;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.TransactionalDataRegion;
+import org.hibernate.cache.access.AccessType;
+import org.hibernate.cache.access.SoftLock;
+
+/**
+ * An entity or collection region with read-write access. A writer locks
+ * the entry before changing the database; while it is locked, and until
+ * the transactions that started before the last writer finished have
+ * ended, nobody reads or caches it. Read-only and nonstrict read-write use
+ * the same, stricter, rules. Each entry is changed under the lock of its
+ * {@link BoundedCache}.
+ */
+abstract class BoundedTransactionalRegion extends BoundedRegion implements TransactionalDataRegion {
+
+    /**
+     * A cached value, readable by transactions that started after it was
+     * cached.
+     */
+    private static final class Item implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final Object              value;
+
+        final Object              version;
+
+        final long                timestamp;
+
+        Item(Object value, Object version, long timestamp) {
+            this.value = value;
+            this.version = version;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Holds the place of an entry being changed by one or more writers.
+     */
+    private static final class Lock implements SoftLock, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** After this timestamp the lock is considered abandoned. */
+        long                      timeout;
+
+        int                       writers;
+
+        /** When the last writer unlocked; 0 while there are writers. */
+        long                      unlocked;
+
+        Lock(long timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    private final CacheDataDescription metadata;
+
+    BoundedTransactionalRegion(BoundedCache cache, CacheDataDescription metadata) {
+        super(cache);
+        this.metadata = metadata;
+    }
+
+    @Override
+    public CacheDataDescription getCacheDataDescription() {
+        return metadata;
+    }
+
+    @Override
+    public boolean isTransactionAware() {
+        return false;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Map toMap() {
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        for (Map.Entry<Object, Object> entry : cache.toMap().entrySet()) {
+            if (entry.getValue() instanceof Item) {
+                values.put(entry.getKey(), ((Item) entry.getValue()).value);
+            }
+        }
+        return values;
+    }
+
+    static void checkAccessType(AccessType accessType) {
+        if (AccessType.TRANSACTIONAL.equals(accessType)) {
+            throw new CacheException("Bounded cache regions are not transactional; use read-write");
+        }
+    }
+
+    Object get(Object key, long txTimestamp) {
+        synchronized (cache) {
+            Object entry = cache.peek(key);
+            if (entry instanceof Item && ((Item) entry).timestamp < txTimestamp) {
+                cache.hit();
+                return ((Item) entry).value;
+            }
+            cache.miss();
+            return null;
+        }
+    }
+
+    boolean putFromLoad(Object key, Object value, long txTimestamp, Object version, boolean minimalPutOverride) {
+        synchronized (cache) {
+            Object entry = cache.peek(key);
+            if (entry instanceof Lock) {
+                Lock lock = (Lock) entry;
+                boolean abandoned = lock.timeout < txTimestamp;
+                if (!abandoned && (lock.writers > 0 || lock.unlocked >= txTimestamp)) {
+                    return false;
+                }
+            }
+            else if (entry instanceof Item && (minimalPutOverride || !isNewer(version, ((Item) entry).version))) {
+                return false;
+            }
+            cache.put(key, new Item(value, version, nextTimestamp()));
+            return true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean isNewer(Object version, Object cached) {
+        Comparator<Object> comparator = metadata.getVersionComparator();
+        return metadata.isVersioned() && version != null && cached != null && comparator != null && comparator.compare(cached, version) < 0;
+    }
+
+    SoftLock lockItem(Object key) {
+        synchronized (cache) {
+            Object entry = cache.peek(key);
+            Lock lock = entry instanceof Lock ? (Lock) entry : new Lock(0);
+            lock.timeout = nextTimestamp() + TIMEOUT;
+            lock.writers++;
+            lock.unlocked = 0;
+            cache.put(key, lock);
+            return lock;
+        }
+    }
+
+    void unlockItem(Object key, SoftLock softLock) {
+        synchronized (cache) {
+            Object entry = cache.peek(key);
+            Lock lock;
+            if (entry == softLock) {
+                lock = (Lock) softLock;
+                lock.writers = Math.max(lock.writers - 1, 0);
+            }
+            else {
+                // evicted or replaced while locked: fence off older readers anyway
+                lock = new Lock(nextTimestamp() + TIMEOUT);
+            }
+            if (lock.writers == 0) {
+                lock.unlocked = nextTimestamp();
+            }
+            cache.put(key, lock);
+        }
+    }
+
+    /**
+     * @return whether the new value was cached, which it is only if no other
+     *         writer locked the entry meanwhile
+     */
+    boolean afterUpdate(Object key, Object value, Object version, SoftLock softLock) {
+        synchronized (cache) {
+            if (cache.peek(key) == softLock && ((Lock) softLock).writers == 1) {
+                cache.put(key, new Item(value, version, nextTimestamp()));
+                return true;
+            }
+            unlockItem(key, softLock);
+            return false;
+        }
+    }
+
+    boolean afterInsert(Object key, Object value, Object version) {
+        synchronized (cache) {
+            if (cache.peek(key) != null) {
+                return false;
+            }
+            cache.put(key, new Item(value, version, nextTimestamp()));
+            return true;
+        }
+    }
+
+    /**
+     * Drops an entry unless a writer holds it, whose unlock fences it off.
+     */
+    void remove(Object key) {
+        synchronized (cache) {
+            if (!(cache.peek(key) instanceof Lock)) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    void evict(Object key) {
+        cache.remove(key);
+    }
+
+    void evictAll() {
+        cache.clear();
+    }
+}
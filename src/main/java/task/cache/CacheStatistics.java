@@ -0,0 +1,36 @@
+package task.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Publishes the hit, miss and eviction counts of the second-level cache
+ * regions over JMX, so the regions can be sized from production traffic.
+ */
+@ManagedResource(objectName = "task:type=CacheStatistics", description = "Second-level cache regions")
+public class CacheStatistics {
+
+    @ManagedOperation(description = "Empties every region")
+    public void clear() {
+        for (BoundedCache cache : BoundedRegionFactory.getRegions()) {
+            cache.clear();
+        }
+    }
+
+    @ManagedAttribute(description = "Size, limits, hits, misses and evictions per region")
+    public String[] getRegions() {
+        List<String> lines = new ArrayList<String>();
+        for (BoundedCache cache : BoundedRegionFactory.getRegions()) {
+            long hits = cache.getHitCount();
+            long misses = cache.getMissCount();
+            long lookups = hits + misses;
+            lines.add(cache.getRegionName() + ": entries=" + cache.getElementCountInMemory() + "/" + cache.getMaxEntries() + ", ttl=" + cache.getTtlSeconds() + "s, hits=" + hits + ", misses=" + misses + ", hitRatio="
+                    + (lookups == 0 ? 0 : hits * 100 / lookups) + "%, puts=" + cache.getPutCount() + ", evictions=" + cache.getEvictionCount() + ", expirations=" + cache.getExpirationCount());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+}
@@ -0,0 +1,71 @@
+package task.domain;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * A task moved to TASK_ARCHIVE by {@link task.tasks.TaskArchiver}. Rows are
+ * only written by the bulk INSERT ... SELECT of HibernateTaskManager, which
+ * leaves ARCHIVED to its column default.
+ */
+@Entity
+@Table(name = "TASK_ARCHIVE")
+public class ArchivedTask {
+
+    @Id
+    @Column(name = "TASK_ID")
+    private Long    taskID;
+
+    @Column(name = "TASK_NAME")
+    private String  taskName;
+
+    @Column(name = "ASSIGNEE")
+    private String  assignee;
+
+    @Column(name = "DESCRIPTION")
+    private String  description;
+
+    @Column(name = "D_DATE")
+    @Temporal(TemporalType.DATE)
+    private Date    date;
+
+    @Column(name = "ARCHIVED", insertable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date    archived;
+
+    public ArchivedTask() {
+    }
+
+    /**
+     * @return when the task was moved to the archive
+     */
+    public Date getArchived() {
+        return archived;
+    }
+
+    public String getAssignee() {
+        return assignee;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Long getTaskID() {
+        return taskID;
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+}
@@ -0,0 +1,30 @@
+package task.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * The version of the task data as a whole: a counter raised by every write,
+ * and when that write happened.
+ */
+public final class DataVersion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long        version;
+
+    private final long        modified;
+
+    public DataVersion(long version, Date modified) {
+        this.version = version;
+        this.modified = modified.getTime();
+    }
+
+    public Date getModified() {
+        return new Date(modified);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
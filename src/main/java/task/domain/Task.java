@@ -7,13 +7,16 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.validator.constraints.NotBlank;
 
 /**
@@ -22,12 +25,31 @@ import org.hibernate.validator.constraints.NotBlank;
  */
 @Entity
 @Table(name = "TASK")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "task.domain.Task")
+@org.hibernate.annotations.Entity(dynamicUpdate = true)
 public class Task {
+    /**
+     * Number of ids reserved by each ID_SEQ.NEXTVAL; must match the
+     * sequence's INCREMENT BY (see DB/sequence.sql).
+     */
+    public static final String ID_BLOCK_SIZE = "50";
+
+    /*
+     * The pooled optimizer treats each NEXTVAL as the upper end of a block of
+     * ID_BLOCK_SIZE ids and hands them out from memory, so only one insert in
+     * ID_BLOCK_SIZE pays for a sequence round-trip. Blocks come from the
+     * database sequence, so several nodes can share it without overlapping.
+     * With task.id.generator=time, TaskIdGenerator mints the ids in memory
+     * instead and the sequence is not used.
+     */
     @Id
     @Column(name = "TASK_ID")
-    @SequenceGenerator(name = "SEQ_STORE", sequenceName = "ID_SEQ", allocationSize = 1)
+    @GenericGenerator(name = "SEQ_STORE", strategy = "task.id.TaskIdGenerator", parameters = {
+        @Parameter(name = "sequence_name", value = "ID_SEQ"),
+        @Parameter(name = "increment_size", value = ID_BLOCK_SIZE),
+        @Parameter(name = "optimizer", value = "pooled") })
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_STORE")
-    private Integer taskID;
+    private Long    taskID;
 
     @Column(name = "TASK_NAME")
     @NotBlank
@@ -63,7 +85,7 @@ public class Task {
         return description;
     }
 
-    public Integer getTaskID() {
+    public Long getTaskID() {
         return taskID;
     }
 
@@ -83,7 +105,7 @@ public class Task {
         this.description = description;
     }
 
-    public void setID(int taskID) {
+    public void setID(long taskID) {
         this.taskID = taskID;
     }
 
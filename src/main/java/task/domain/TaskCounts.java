@@ -0,0 +1,82 @@
+package task.domain;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Task counts per assignee and per start day, or changes to them, raised
+ * and lowered one task at a time. Counts that come back to zero are
+ * dropped, so a change that moves nothing is empty. A task without an
+ * assignee or a date is left out of that count. Not thread-safe.
+ */
+public class TaskCounts {
+
+    private final SortedMap<String, Integer> byAssignee = new TreeMap<String, Integer>();
+
+    private final SortedMap<Date, Integer>   byDay      = new TreeMap<Date, Integer>();
+
+    /**
+     * @param delta +1 for a task that is added, -1 for one that goes
+     */
+    public void add(String assignee, Date date, int delta) {
+        if (assignee != null) {
+            add(byAssignee, assignee, delta);
+        }
+        if (date != null) {
+            add(byDay, day(date), delta);
+        }
+    }
+
+    public void add(TaskView view, int delta) {
+        add(view.getAssignee(), view.getDate(), delta);
+    }
+
+    private static <K> void add(Map<K, Integer> counts, K key, int delta) {
+        Integer count = counts.get(key);
+        int sum = (count == null ? 0 : count) + delta;
+        if (sum == 0) {
+            counts.remove(key);
+        }
+        else {
+            counts.put(key, sum);
+        }
+    }
+
+    public void clear() {
+        byAssignee.clear();
+        byDay.clear();
+    }
+
+    public SortedMap<String, Integer> getByAssignee() {
+        return Collections.unmodifiableSortedMap(byAssignee);
+    }
+
+    public SortedMap<Date, Integer> getByDay() {
+        return Collections.unmodifiableSortedMap(byDay);
+    }
+
+    public boolean isEmpty() {
+        return byAssignee.isEmpty() && byDay.isEmpty();
+    }
+
+    public TaskSummary toSummary() {
+        return new TaskSummary(byAssignee, byDay);
+    }
+
+    /**
+     * @return midnight, local time, of the day of a date
+     */
+    public static Date day(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+}
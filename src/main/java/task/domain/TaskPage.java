@@ -0,0 +1,95 @@
+package task.domain;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One keyset page of tasks, ordered by task id, as detached views; the
+ * pages of a date range are ordered by start date, then task id.
+ *
+ * The cursors are the first and last task ids of the page, with their start
+ * dates for a date range; pass them back as the seek position to fetch the
+ * previous or next page. The data version is read in the same transaction
+ * as the tasks, so it is never newer than them.
+ */
+public class TaskPage {
+
+    /**
+     * Which side of the cursor to seek from.
+     */
+    public enum Direction {
+        /** Tasks after the cursor in the order of the page. */
+        NEXT,
+        /** Tasks before the cursor in the order of the page. */
+        PREVIOUS
+    }
+
+    private final List<TaskView> tasks;
+
+    private final boolean        hasNext;
+
+    private final boolean        hasPrevious;
+
+    private final DataVersion    version;
+
+    public TaskPage(List<TaskView> tasks, boolean hasNext, boolean hasPrevious) {
+        this(tasks, hasNext, hasPrevious, null);
+    }
+
+    public TaskPage(List<TaskView> tasks, boolean hasNext, boolean hasPrevious, DataVersion version) {
+        this.tasks = Collections.unmodifiableList(tasks);
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+        this.version = version;
+    }
+
+    public List<TaskView> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * @return the data version the page was read at, or null if unknown
+     */
+    public DataVersion getVersion() {
+        return version;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public boolean isHasPrevious() {
+        return hasPrevious;
+    }
+
+    /**
+     * @return the cursor for the next page, or null if the page is empty
+     */
+    public Long getNextCursor() {
+        return tasks.isEmpty() ? null : tasks.get(tasks.size() - 1).getTaskID();
+    }
+
+    /**
+     * @return the cursor for the previous page, or null if the page is empty
+     */
+    public Long getPreviousCursor() {
+        return tasks.isEmpty() ? null : tasks.get(0).getTaskID();
+    }
+
+    /**
+     * @return the start date of the next page's cursor task, or null if the
+     *         page is empty
+     */
+    public Date getNextCursorDate() {
+        return tasks.isEmpty() ? null : tasks.get(tasks.size() - 1).getDate();
+    }
+
+    /**
+     * @return the start date of the previous page's cursor task, or null if
+     *         the page is empty
+     */
+    public Date getPreviousCursorDate() {
+        return tasks.isEmpty() ? null : tasks.get(0).getDate();
+    }
+}
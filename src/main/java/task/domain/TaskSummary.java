@@ -0,0 +1,40 @@
+package task.domain;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The number of tasks per assignee and per start day at one moment.
+ * Tasks without an assignee or a date are not in that count.
+ */
+public final class TaskSummary implements Serializable {
+
+    private static final long                serialVersionUID = 1L;
+
+    private final SortedMap<String, Integer> byAssignee;
+
+    private final SortedMap<Date, Integer>   byDay;
+
+    public TaskSummary(Map<String, Integer> byAssignee, Map<Date, Integer> byDay) {
+        this.byAssignee = Collections.unmodifiableSortedMap(new TreeMap<String, Integer>(byAssignee));
+        this.byDay = Collections.unmodifiableSortedMap(new TreeMap<Date, Integer>(byDay));
+    }
+
+    /**
+     * @return the counts by assignee, in name order
+     */
+    public SortedMap<String, Integer> getByAssignee() {
+        return byAssignee;
+    }
+
+    /**
+     * @return the counts by day, keyed by its midnight, in date order
+     */
+    public SortedMap<Date, Integer> getByDay() {
+        return byDay;
+    }
+}
@@ -0,0 +1,56 @@
+package task.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A read-only copy of a task for display. Unlike a Task it holds no
+ * Hibernate state, so it can be rendered after the session and its
+ * connection have been released.
+ */
+public final class TaskView implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long        taskID;
+
+    private final String      taskName;
+
+    private final String      assignee;
+
+    private final String      description;
+
+    private final Date        date;
+
+    public TaskView(Long taskID, String taskName, String assignee, String description, Date date) {
+        this.taskID = taskID;
+        this.taskName = taskName;
+        this.assignee = assignee;
+        this.description = description;
+        this.date = date == null ? null : new Date(date.getTime());
+    }
+
+    public TaskView(Task task) {
+        this(task.getTaskID(), task.getTaskName(), task.getAssignee(), task.getDescription(), task.getDate());
+    }
+
+    public String getAssignee() {
+        return assignee;
+    }
+
+    public Date getDate() {
+        return date == null ? null : new Date(date.getTime());
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Long getTaskID() {
+        return taskID;
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+}
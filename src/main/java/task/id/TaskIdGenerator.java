@@ -0,0 +1,56 @@
+package task.id;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * The id generator of Task. With the Hibernate property task.id.generator
+ * set to "sequence" it draws blocks of ids from ID_SEQ like
+ * SequenceStyleGenerator; set to "time" it mints them with
+ * {@link TimeOrderedIds} for the node in task.id.node, so inserts need no
+ * sequence at all. Hibernate does not hand its own properties to
+ * generators, so they are read from the SessionFactory on first use.
+ */
+public class TaskIdGenerator extends SequenceStyleGenerator {
+
+    public static final String      SEQUENCE = "sequence";
+
+    public static final String      TIME     = "time";
+
+    /** The time-ordered ids, or null to use the sequence; set on first use. */
+    private volatile TimeOrderedIds ids;
+
+    private volatile boolean        configured;
+
+    @Override
+    public Serializable generate(SessionImplementor session, Object object) throws HibernateException {
+        if (!configured) {
+            configure(session.getFactory().getProperties());
+        }
+        return ids != null ? ids.next() : super.generate(session, object);
+    }
+
+    private synchronized void configure(Properties properties) {
+        if (!configured) {
+            ids = forMode(properties.getProperty("task.id.generator", SEQUENCE), Integer.parseInt(properties.getProperty("task.id.node", "0")));
+            configured = true;
+        }
+    }
+
+    /**
+     * @return the time-ordered ids of the node, or null for the sequence
+     */
+    public static TimeOrderedIds forMode(String generator, int node) {
+        if (TIME.equals(generator)) {
+            return TimeOrderedIds.forNode(node);
+        }
+        if (!SEQUENCE.equals(generator)) {
+            throw new IllegalArgumentException("task.id.generator is " + generator + ", not " + SEQUENCE + " or " + TIME);
+        }
+        return null;
+    }
+}
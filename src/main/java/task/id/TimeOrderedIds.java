@@ -0,0 +1,142 @@
+package task.id;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mints unique, roughly time-ordered 63-bit ids in memory, without a
+ * database round-trip. Each id holds
+ *
+ * <pre>
+ * 41 bits  milliseconds since 2012-01-01 UTC (good until 2081)
+ * 10 bits  node, 0 to 1023, unique per JVM writing to the same table
+ * 12 bits  counter within the millisecond
+ * </pre>
+ *
+ * Ids of one node always increase. When more than 4096 ids are asked for in
+ * one millisecond, or the clock goes back, the ids run ahead of the clock on
+ * the next milliseconds instead of repeating; they catch up once the clock
+ * does. A clock that goes back across a restart of the node can still
+ * repeat ids, so it must not be set back by more than the restart takes.
+ * Thread-safe and lock-free.
+ */
+public final class TimeOrderedIds {
+
+    private static final Logger                               LOG        = LoggerFactory.getLogger(TimeOrderedIds.class);
+
+    /** 2012-01-01T00:00:00Z, the zero of the time bits. */
+    public static final long                                  EPOCH      = 1325376000000L;
+
+    private static final int                                  NODE_BITS  = 10;
+
+    private static final int                                  COUNT_BITS = 12;
+
+    public static final int                                   MAX_NODE   = (1 << NODE_BITS) - 1;
+
+    private static final long                                 MAX_MILLIS = (1L << 41) - 1;
+
+    /** Milliseconds the ids may run ahead of the clock before a warning. */
+    private static final long                                 MAX_LEAD   = 1000;
+
+    private static final ConcurrentMap<Integer, TimeOrderedIds> NODES    = new ConcurrentHashMap<Integer, TimeOrderedIds>();
+
+    private final long                                        node;
+
+    /** Milliseconds since EPOCH and counter of the last id, as one value. */
+    private final AtomicLong                                  last       = new AtomicLong();
+
+    /** Whether the ids are known to be ahead of the clock by over MAX_LEAD. */
+    private volatile boolean                                  ahead;
+
+    TimeOrderedIds(int node) {
+        this.node = node;
+    }
+
+    /**
+     * @return the one generator of the node in this JVM, so that Hibernate
+     *         and plain JDBC never hand out the same id
+     */
+    public static TimeOrderedIds forNode(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node " + node + " is not between 0 and " + MAX_NODE);
+        }
+        TimeOrderedIds ids = NODES.get(node);
+        if (ids == null) {
+            TimeOrderedIds created = new TimeOrderedIds(node);
+            ids = NODES.putIfAbsent(node, created);
+            if (ids == null) {
+                ids = created;
+            }
+        }
+        return ids;
+    }
+
+    public long next() {
+        return next(System.currentTimeMillis());
+    }
+
+    /**
+     * @param currentTimeMillis the clock, as tests set it
+     */
+    long next(long currentTimeMillis) {
+        long now = currentTimeMillis - EPOCH;
+        long start = now << COUNT_BITS;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            // a full counter carries into the next millisecond
+            next = start > previous ? start : previous + 1;
+        } while (!last.compareAndSet(previous, next));
+
+        long millis = next >>> COUNT_BITS;
+        if (millis > MAX_MILLIS) {
+            throw new IllegalStateException("The time bits of the ids have run out");
+        }
+        checkLead(millis - now);
+        return millis << NODE_BITS + COUNT_BITS | node << COUNT_BITS | next & (1 << COUNT_BITS) - 1;
+    }
+
+    private void checkLead(long lead) {
+        if (lead > MAX_LEAD) {
+            if (!ahead) {
+                ahead = true;
+                LOG.warn("Task ids of node {} are {} ms ahead of the clock; has the clock been set back?", node, lead);
+            }
+        }
+        else if (ahead && lead <= 0) {
+            ahead = false;
+            LOG.info("Task ids of node {} have caught up with the clock", node);
+        }
+    }
+
+    /**
+     * @return whether the ids have run more than MAX_LEAD ahead of the
+     *         clock and not caught up yet
+     */
+    boolean isAhead() {
+        return ahead;
+    }
+
+    public int getNode() {
+        return (int) node;
+    }
+
+    /**
+     * @return when an id was minted, to the millisecond
+     */
+    public static long millisOf(long id) {
+        return (id >>> NODE_BITS + COUNT_BITS) + EPOCH;
+    }
+
+    /**
+     * @return the node that minted an id
+     */
+    public static int nodeOf(long id) {
+        return (int) (id >>> COUNT_BITS & MAX_NODE);
+    }
+}
@@ -0,0 +1,166 @@
+package task.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+
+import task.monitor.LatencyHistogram;
+
+/**
+ * A DBCP pool that measures how long callers wait for a connection and
+ * publishes that, together with the pool occupancy, over JMX as
+ * task:type=ConnectionPool,name=&lt;bean name&gt;. The pool size and the
+ * borrow timeout can also be changed there while the application runs.
+ */
+@ManagedResource(description = "JDBC connection pool")
+public class InstrumentedDataSource extends BasicDataSource implements BeanNameAware, SelfNaming {
+
+    private final LatencyHistogram borrowWait     = new LatencyHistogram();
+
+    private final AtomicInteger    waiting        = new AtomicInteger();
+
+    private final AtomicInteger    peakWaiting    = new AtomicInteger();
+
+    private final AtomicLong       borrowTimeouts = new AtomicLong();
+
+    private String                 beanName       = "dataSource";
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int queued = waiting.incrementAndGet();
+        int peak;
+        while (queued > (peak = peakWaiting.get()) && !peakWaiting.compareAndSet(peak, queued)) {
+            // another thread raised the peak meanwhile; compare again
+        }
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        }
+        catch (SQLException e) {
+            // DBCP reports an exhausted pool as a NoSuchElementException after maxWait
+            if (e.getCause() instanceof NoSuchElementException) {
+                borrowTimeouts.incrementAndGet();
+            }
+            throw e;
+        }
+        finally {
+            borrowWait.record(System.nanoTime() - start);
+            waiting.decrementAndGet();
+        }
+    }
+
+    @ManagedAttribute(description = "Connections handed out, including ones that timed out")
+    public long getBorrowCount() {
+        return borrowWait.getCount();
+    }
+
+    @ManagedAttribute(description = "Borrows that gave up after maxWait because the pool was exhausted")
+    public long getBorrowTimeouts() {
+        return borrowTimeouts.get();
+    }
+
+    @ManagedAttribute(description = "Borrow waits per duration bucket")
+    public String[] getBorrowWaitHistogram() {
+        return borrowWait.getBuckets();
+    }
+
+    @ManagedAttribute(description = "Longest borrow wait in milliseconds")
+    public double getBorrowWaitMaxMillis() {
+        return borrowWait.getMaxMillis();
+    }
+
+    @ManagedAttribute(description = "Mean borrow wait in milliseconds")
+    public double getBorrowWaitMeanMillis() {
+        return borrowWait.getMeanMillis();
+    }
+
+    @ManagedAttribute(description = "Median borrow wait in milliseconds")
+    public double getBorrowWait50thMillis() {
+        return borrowWait.getPercentileMillis(50);
+    }
+
+    @ManagedAttribute(description = "95th percentile borrow wait in milliseconds")
+    public double getBorrowWait95thMillis() {
+        return borrowWait.getPercentileMillis(95);
+    }
+
+    @ManagedAttribute(description = "99th percentile borrow wait in milliseconds")
+    public double getBorrowWait99thMillis() {
+        return borrowWait.getPercentileMillis(99);
+    }
+
+    @Override
+    @ManagedAttribute(description = "Most connections open at once")
+    public synchronized int getMaxActive() {
+        return super.getMaxActive();
+    }
+
+    @Override
+    @ManagedAttribute(description = "Most connections open at once")
+    public synchronized void setMaxActive(int maxActive) {
+        super.setMaxActive(maxActive);
+    }
+
+    @Override
+    @ManagedAttribute(description = "Milliseconds a borrow waits for a free connection before failing, or -1 for ever")
+    public synchronized long getMaxWait() {
+        return super.getMaxWait();
+    }
+
+    @Override
+    @ManagedAttribute(description = "Milliseconds a borrow waits for a free connection before failing, or -1 for ever")
+    public synchronized void setMaxWait(long maxWait) {
+        super.setMaxWait(maxWait);
+    }
+
+    @Override
+    @ManagedAttribute(description = "Connections currently borrowed")
+    public synchronized int getNumActive() {
+        return super.getNumActive();
+    }
+
+    @Override
+    @ManagedAttribute(description = "Open connections waiting in the pool")
+    public synchronized int getNumIdle() {
+        return super.getNumIdle();
+    }
+
+    @ManagedAttribute(description = "Most threads waiting for a connection at once since the last reset")
+    public int getPeakWaitingThreads() {
+        return peakWaiting.get();
+    }
+
+    @ManagedAttribute(description = "Threads currently waiting for a connection")
+    public int getWaitingThreads() {
+        return waiting.get();
+    }
+
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        return ObjectName.getInstance("task:type=ConnectionPool,name=" + ObjectName.quote(beanName));
+    }
+
+    @ManagedOperation(description = "Clears the borrow statistics")
+    public void resetStatistics() {
+        borrowWait.reset();
+        borrowTimeouts.set(0);
+        peakWaiting.set(waiting.get());
+    }
+
+    @Override
+    public void setBeanName(String name) {
+        this.beanName = name;
+    }
+}
@@ -0,0 +1,341 @@
+package task.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Times the statements run on its connections. Every statement that runs
+ * for thresholdMillis or longer is logged with the types of its bind
+ * parameters, and the latest ones are kept for the diagnostics page; the
+ * values are left out, as they may be personal. On a thread taking a
+ * {@link StatementProfile}, every statement is also added to that profile,
+ * with the time spent and the rows read fetching its results.
+ * <p>
+ * While the threshold is negative and the thread takes no profile,
+ * connections are handed out as they are and cost nothing extra. The
+ * threshold can be changed over JMX as task:type=SlowStatementLog and
+ * applies to connections taken after that.
+ */
+@ManagedResource(objectName = "task:type=SlowStatementLog", description = "Statements slower than a threshold")
+public class ProfilingDataSource extends DelegatingDataSource {
+
+    private static final Logger             LOG             = LoggerFactory.getLogger(ProfilingDataSource.class);
+
+    /** Milliseconds from which a statement is logged, or -1 to time none. */
+    private volatile long                   thresholdMillis = -1;
+
+    /** Slow statements kept for the diagnostics page. */
+    private int                             recentSize      = 50;
+
+    /** The latest slow statements, newest first; guarded by itself. */
+    private final LinkedList<SlowStatement> recent          = new LinkedList<SlowStatement>();
+
+    private final AtomicLong                slowCount       = new AtomicLong();
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        if (thresholdMillis < 0 && StatementProfile.current() == null) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * Wraps the statements a connection creates.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = ProfilingDataSource.invoke(target, method, args);
+            if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { method.getReturnType() }, new StatementHandler(
+                        (Statement) result, sql, (Connection) proxy));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Notes the bind parameter types and the batch size of a statement and
+     * times its executions. Used by one thread at a time, as JDBC statements
+     * are.
+     */
+    private class StatementHandler implements InvocationHandler {
+
+        private final Statement                  target;
+
+        private final String                     sql;
+
+        private final Connection                 connection;
+
+        private final Map<Integer, String>       parameters = new TreeMap<Integer, String>();
+
+        private int                              batchSize;
+
+        /** The last execution profiled, whose results may still be read. */
+        private StatementProfile.Execution       execution;
+
+        StatementHandler(Statement target, String sql, Connection connection) {
+            this.target = target;
+            this.sql = sql;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(proxy, method, args);
+            }
+            if (name.equals("getConnection")) {
+                return connection;
+            }
+            if (name.equals("getResultSet")) {
+                return results(proxy, ProfilingDataSource.invoke(target, method, args));
+            }
+            if (name.equals("addBatch")) {
+                batchSize++;
+            }
+            else if (name.equals("clearParameters")) {
+                parameters.clear();
+            }
+            else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], type(name, args[1]));
+            }
+            return ProfilingDataSource.invoke(target, method, args);
+        }
+
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            StatementProfile profile = StatementProfile.current();
+            Object result = null;
+            long start = System.nanoTime();
+            try {
+                result = ProfilingDataSource.invoke(target, method, args);
+            }
+            finally {
+                long nanos = System.nanoTime() - start;
+                long threshold = thresholdMillis;
+                if (threshold >= 0 && nanos / 1000000L >= threshold) {
+                    slow(new SlowStatement(new Date(), nanos / 1000000L, executed, describe(parameters), name.equals("executeBatch") ? batchSize : 0));
+                }
+                if (profile != null) {
+                    execution = profile.executed(executed, parameters.size(), nanos, changed(result));
+                }
+                if (name.equals("executeBatch")) {
+                    batchSize = 0;
+                }
+            }
+            return results(proxy, result);
+        }
+
+        /**
+         * @return the result set wrapped to time its fetches into the
+         *         profile, or anything else as it is
+         */
+        private Object results(Object proxy, Object result) {
+            StatementProfile profile = StatementProfile.current();
+            if (!(result instanceof ResultSet) || profile == null || execution == null) {
+                return result;
+            }
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class }, new ResultSetHandler((ResultSet) result,
+                    (Statement) proxy, profile, execution));
+        }
+    }
+
+    /**
+     * @return the rows an update or batch changed, or 0 for a query
+     */
+    private static long changed(Object result) {
+        if (result instanceof Integer) {
+            return Math.max((Integer) result, 0);
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Adds the time spent in next() and the rows it returns to the
+     * execution that produced the result set.
+     */
+    private static class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet                  target;
+
+        private final Statement                  statement;
+
+        private final StatementProfile           profile;
+
+        private final StatementProfile.Execution execution;
+
+        ResultSetHandler(ResultSet target, Statement statement, StatementProfile profile, StatementProfile.Execution execution) {
+            this.target = target;
+            this.statement = statement;
+            this.profile = profile;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("next")) {
+                long start = System.nanoTime();
+                Boolean row = (Boolean) ProfilingDataSource.invoke(target, method, args);
+                profile.fetched(execution, System.nanoTime() - start, row);
+                return row;
+            }
+            if (method.getName().equals("getStatement")) {
+                return statement;
+            }
+            return ProfilingDataSource.invoke(target, method, args);
+        }
+    }
+
+    /**
+     * @return the type a setter binds, such as "String" for setString
+     */
+    private static String type(String setter, Object value) {
+        if (setter.equals("setNull")) {
+            return "null";
+        }
+        if (setter.equals("setObject")) {
+            return value == null ? "null" : value.getClass().getSimpleName();
+        }
+        return setter.substring(3);
+    }
+
+    /**
+     * @return the types by position, runs of one type folded together as in
+     *         "1:String, 2-501:Int"
+     */
+    private static String describe(Map<Integer, String> parameters) {
+        StringBuilder shape = new StringBuilder();
+        int first = 0;
+        int last = 0;
+        String type = null;
+        for (Map.Entry<Integer, String> parameter : parameters.entrySet()) {
+            if (parameter.getValue().equals(type) && parameter.getKey() == last + 1) {
+                last++;
+                continue;
+            }
+            append(shape, first, last, type);
+            first = last = parameter.getKey();
+            type = parameter.getValue();
+        }
+        append(shape, first, last, type);
+        return shape.toString();
+    }
+
+    private static void append(StringBuilder shape, int first, int last, String type) {
+        if (type != null) {
+            shape.append(shape.length() == 0 ? "" : ", ").append(first).append(first == last ? "" : "-" + last).append(':').append(type);
+        }
+    }
+
+    private void slow(SlowStatement statement) {
+        slowCount.incrementAndGet();
+        LOG.warn("Slow statement, {}", statement);
+        synchronized (recent) {
+            recent.addFirst(statement);
+            while (recent.size() > recentSize) {
+                recent.removeLast();
+            }
+        }
+    }
+
+    @ManagedOperation(description = "Forgets the slow statements kept so far")
+    public void clear() {
+        synchronized (recent) {
+            recent.clear();
+        }
+        slowCount.set(0);
+    }
+
+    /**
+     * @return the latest slow statements, newest first
+     */
+    public List<SlowStatement> getRecent() {
+        synchronized (recent) {
+            return new ArrayList<SlowStatement>(recent);
+        }
+    }
+
+    @ManagedAttribute(description = "The latest slow statements, newest first")
+    public String[] getRecentStatements() {
+        List<String> lines = new ArrayList<String>();
+        for (SlowStatement statement : getRecent()) {
+            lines.add(statement.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedAttribute(description = "Statements that reached the threshold")
+    public long getSlowCount() {
+        return slowCount.get();
+    }
+
+    @ManagedAttribute(description = "Milliseconds from which a statement is logged, or -1 to time none")
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    public void setRecentSize(int recentSize) {
+        this.recentSize = recentSize;
+    }
+
+    @ManagedAttribute
+    public void setThresholdMillis(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+}
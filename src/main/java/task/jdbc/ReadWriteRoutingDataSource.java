@@ -0,0 +1,183 @@
+package task.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Hands out replica connections to read-only transactions and primary
+ * connections to everything else.
+ * <p>
+ * Whether a transaction is read-only is only known once it has started, so
+ * this must sit behind a LazyConnectionDataSourceProxy, which fetches the
+ * connection at the first statement rather than at transaction begin.
+ * Reads also go to the primary while {@link ReadYourWrites} requires it,
+ * and when no replica connection can be had.
+ */
+@ManagedResource(objectName = "task:type=ReadWriteRouting", description = "Read/write split between primary and replicas")
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    /**
+     * How a replica is picked for a read.
+     */
+    public enum Balancing {
+        /** Each replica in turn. */
+        ROUND_ROBIN,
+        /** The replica pool with the fewest borrowed connections. */
+        LEAST_CONNECTIONS
+    }
+
+    private DataSource          primary;
+
+    private List<DataSource>    replicas        = new ArrayList<DataSource>();
+
+    private Balancing           balancing       = Balancing.ROUND_ROBIN;
+
+    private final AtomicInteger next            = new AtomicInteger();
+
+    private final AtomicLong    primaryReads    = new AtomicLong();
+
+    private final AtomicLong    replicaReads    = new AtomicLong();
+
+    private final AtomicLong    replicaFailures = new AtomicLong();
+
+    private final AtomicLong    writes          = new AtomicLong();
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(false, null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(true, username, password);
+    }
+
+    private Connection route(boolean asUser, String username, String password) throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (!ReadYourWrites.isPrimaryRequired() && !replicas.isEmpty()) {
+                try {
+                    Connection connection = connect(chooseReplica(), asUser, username, password);
+                    replicaReads.incrementAndGet();
+                    return connection;
+                }
+                catch (SQLException e) {
+                    // the primary can serve the read too
+                    replicaFailures.incrementAndGet();
+                }
+            }
+            primaryReads.incrementAndGet();
+        }
+        else if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            writes.incrementAndGet();
+            ReadYourWrites.markWritten();
+        }
+        return connect(primary, asUser, username, password);
+    }
+
+    private static Connection connect(DataSource target, boolean asUser, String username, String password) throws SQLException {
+        return asUser ? target.getConnection(username, password) : target.getConnection();
+    }
+
+    /**
+     * Tells the caches whether what the current transaction reads may be
+     * older than what they hold: they must not be filled from a replica.
+     * @return true if the transaction is routed to a replica that is not
+     *         the primary database itself under another pool
+     */
+    public boolean isReplicaRead() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReadYourWrites.isPrimaryRequired()) {
+            return false;
+        }
+        for (DataSource replica : replicas) {
+            if (!isPrimaryDatabase(replica)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPrimaryDatabase(DataSource replica) {
+        if (replica == primary) {
+            return true;
+        }
+        if (!(replica instanceof BasicDataSource) || !(primary instanceof BasicDataSource)) {
+            return false;
+        }
+        BasicDataSource a = (BasicDataSource) replica;
+        BasicDataSource b = (BasicDataSource) primary;
+        return a.getUrl() != null && a.getUrl().equals(b.getUrl()) && (a.getUsername() == null ? b.getUsername() == null : a.getUsername().equals(b.getUsername()));
+    }
+
+    private DataSource chooseReplica() {
+        if (balancing == Balancing.LEAST_CONNECTIONS) {
+            DataSource least = null;
+            int leastActive = Integer.MAX_VALUE;
+            for (DataSource replica : replicas) {
+                int active = replica instanceof BasicDataSource ? ((BasicDataSource) replica).getNumActive() : 0;
+                if (active < leastActive) {
+                    least = replica;
+                    leastActive = active;
+                }
+            }
+            return least;
+        }
+        // masked so the index stays positive when the counter wraps
+        return replicas.get((next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+    }
+
+    /**
+     * JDBC 4.1; not annotated so that this still compiles on Java 6.
+     */
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public Balancing getBalancing() {
+        return balancing;
+    }
+
+    @ManagedAttribute(description = "Read-only transactions served by the primary")
+    public long getPrimaryReads() {
+        return primaryReads.get();
+    }
+
+    @ManagedAttribute(description = "Read-only transactions served by a replica")
+    public long getReplicaReads() {
+        return replicaReads.get();
+    }
+
+    @ManagedAttribute(description = "Replica connections that failed and fell back to the primary")
+    public long getReplicaFailures() {
+        return replicaFailures.get();
+    }
+
+    @ManagedAttribute(description = "Read-write transactions")
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public void setBalancing(Balancing balancing) {
+        this.balancing = balancing;
+    }
+
+    public void setPrimary(DataSource primary) {
+        this.primary = primary;
+    }
+
+    public void setReplicas(List<DataSource> replicas) {
+        this.replicas = new ArrayList<DataSource>(replicas);
+    }
+}
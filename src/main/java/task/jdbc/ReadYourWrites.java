@@ -0,0 +1,46 @@
+package task.jdbc;
+
+/**
+ * Remembers, per thread, whether reads must go to the primary database
+ * because the caller may not yet see its own writes on a replica. Set by
+ * {@link ReadWriteRoutingDataSource} when a read-write transaction takes a
+ * connection, and by the web tier for sessions that wrote recently.
+ * Whoever starts a unit of work is responsible for calling {@link #reset()}.
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<Boolean>();
+
+    private static final ThreadLocal<Boolean> WRITTEN          = new ThreadLocal<Boolean>();
+
+    private ReadYourWrites() {
+    }
+
+    /**
+     * @return true if this thread has taken a primary connection for a
+     *         read-write transaction since the last reset
+     */
+    public static boolean hasWritten() {
+        return WRITTEN.get() != null;
+    }
+
+    public static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get() != null || WRITTEN.get() != null;
+    }
+
+    static void markWritten() {
+        WRITTEN.set(Boolean.TRUE);
+    }
+
+    /**
+     * Sends the reads of this thread to the primary until the next reset.
+     */
+    public static void requirePrimary() {
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+    }
+
+    public static void reset() {
+        PRIMARY_REQUIRED.remove();
+        WRITTEN.remove();
+    }
+}
@@ -0,0 +1,61 @@
+package task.jdbc;
+
+import java.util.Date;
+
+/**
+ * A statement that took longer than the threshold of
+ * {@link ProfilingDataSource}, with the types of its bind parameters
+ * but not their values.
+ */
+public final class SlowStatement {
+
+    private final Date   executed;
+
+    private final long   millis;
+
+    private final String sql;
+
+    private final String parameters;
+
+    private final int    batchSize;
+
+    public SlowStatement(Date executed, long millis, String sql, String parameters, int batchSize) {
+        this.executed = executed;
+        this.millis = millis;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the rows sent by executeBatch, or 0 for a single execution
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Date getExecuted() {
+        return executed;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return the bind parameter types by position, such as
+     *         "1:String, 2-501:Integer"
+     */
+    public String getParameters() {
+        return parameters;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public String toString() {
+        return millis + " ms" + (batchSize > 0 ? ", batch of " + batchSize : "") + ": " + sql + " [" + parameters + "]";
+    }
+}
@@ -0,0 +1,192 @@
+package task.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The statements one thread ran during a unit of work, usually an HTTP
+ * request, as recorded by {@link ProfilingDataSource}: per statement its
+ * SQL, bind parameter count, execution and fetch time and rows. Whoever
+ * starts a profile is responsible for calling {@link #stop()}. Used by its
+ * own thread only.
+ */
+public final class StatementProfile {
+
+    private static final ThreadLocal<StatementProfile> CURRENT = new ThreadLocal<StatementProfile>();
+
+    /** Executions kept for the details; later ones only add to the totals. */
+    private static final int                           KEPT    = 1000;
+
+    /**
+     * One execution of a statement. Its fetch time and rows grow while its
+     * result set is read.
+     */
+    public static final class Execution {
+
+        private final String sql;
+
+        private final int    binds;
+
+        private final long   executeNanos;
+
+        private long         fetchNanos;
+
+        private long         rows;
+
+        Execution(String sql, int binds, long executeNanos, long rows) {
+            this.sql = sql;
+            this.binds = binds;
+            this.executeNanos = executeNanos;
+            this.rows = rows;
+        }
+
+        public int getBinds() {
+            return binds;
+        }
+
+        public long getExecuteNanos() {
+            return executeNanos;
+        }
+
+        public long getFetchNanos() {
+            return fetchNanos;
+        }
+
+        /**
+         * @return the rows read so far, or those changed by an update
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.1f ms + %.1f ms fetch, %d rows, %d binds: %s", executeNanos / 1e6, fetchNanos / 1e6, rows, binds, sql);
+        }
+    }
+
+    private final List<Execution> executions = new ArrayList<Execution>();
+
+    private int                   statements;
+
+    private long                  executeNanos;
+
+    private long                  fetchNanos;
+
+    private long                  rows;
+
+    private StatementProfile() {
+    }
+
+    /**
+     * Starts profiling the statements of this thread, replacing any profile
+     * left over.
+     */
+    public static StatementProfile start() {
+        StatementProfile profile = new StatementProfile();
+        CURRENT.set(profile);
+        return profile;
+    }
+
+    /**
+     * @return the profile of this thread, or null if none is being taken
+     */
+    public static StatementProfile current() {
+        return CURRENT.get();
+    }
+
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    Execution executed(String sql, int binds, long nanos, long changedRows) {
+        Execution execution = new Execution(sql, binds, nanos, changedRows);
+        statements++;
+        executeNanos += nanos;
+        rows += changedRows;
+        if (executions.size() < KEPT) {
+            executions.add(execution);
+        }
+        return execution;
+    }
+
+    void fetched(Execution execution, long nanos, boolean row) {
+        execution.fetchNanos += nanos;
+        fetchNanos += nanos;
+        if (row) {
+            execution.rows++;
+            rows++;
+        }
+    }
+
+    /**
+     * @return the first {@value #KEPT} executions, in order
+     */
+    public List<Execution> getExecutions() {
+        return Collections.unmodifiableList(executions);
+    }
+
+    public long getExecuteMillis() {
+        return executeNanos / 1000000L;
+    }
+
+    public long getFetchMillis() {
+        return fetchNanos / 1000000L;
+    }
+
+    /**
+     * @return the rows read plus the rows changed
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return the SQL run more than once among the kept executions, with
+     *         how often, most often first; a long list usually means a
+     *         query per row, or the same data read twice
+     */
+    public List<Map.Entry<String, Integer>> getRepeated() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Execution execution : executions) {
+            Integer count = counts.get(execution.sql);
+            counts.put(execution.sql, count == null ? 1 : count + 1);
+        }
+        List<Map.Entry<String, Integer>> repeated = new ArrayList<Map.Entry<String, Integer>>();
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            if (count.getValue() > 1) {
+                repeated.add(count);
+            }
+        }
+        Collections.sort(repeated, new Comparator<Map.Entry<String, Integer>>() {
+
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return b.getValue() - a.getValue();
+            }
+        });
+        return repeated;
+    }
+
+    /**
+     * @return the totals in one line, such as "3 statements, 2 ms executing,
+     *         1 ms fetching, 120 rows"
+     */
+    @Override
+    public String toString() {
+        return statements + " statements, " + getExecuteMillis() + " ms executing, " + getFetchMillis() + " ms fetching, " + rows + " rows";
+    }
+}
@@ -0,0 +1,142 @@
+package task.journal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of records, each written as its length, its CRC-32
+ * and its bytes. A record cut short by a crash fails its length or CRC
+ * check on reading, and it and anything after it are ignored.
+ * <p>
+ * Not thread-safe; callers serialize access.
+ */
+public class Journal {
+
+    /** Bytes of the length and CRC in front of each record. */
+    private static final int  HEADER     = 8;
+
+    /** Records longer than this are taken as corruption. */
+    private static final int  MAX_RECORD = 1 << 20;
+
+    private final File        file;
+
+    private final FileChannel channel;
+
+    private final CRC32       crc        = new CRC32();
+
+    public Journal(File file) throws IOException {
+        this.file = file;
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(channel.size());
+    }
+
+    /**
+     * Appends one record.
+     * @param record the bytes of the record
+     * @param sync whether to force the record to the disk before returning;
+     *            otherwise it survives a crash of the process but not of the
+     *            machine
+     */
+    public void append(byte[] record, boolean sync) throws IOException {
+        crc.reset();
+        crc.update(record, 0, record.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + record.length);
+        buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Forces appended records to the disk.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Reads the intact records from the start of the file. A torn or
+     * corrupt record ends the read, and is cut off so that later appends
+     * follow the last intact record.
+     */
+    public List<byte[]> readAll() throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>();
+        long intact = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || length > MAX_RECORD) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                records.add(record);
+                intact += HEADER + length;
+            }
+        }
+        catch (EOFException e) {
+            // end of the file, possibly in the middle of a torn record
+        }
+        finally {
+            in.close();
+        }
+        if (intact < channel.size()) {
+            channel.truncate(intact);
+        }
+        channel.position(intact);
+        return records;
+    }
+
+    /**
+     * Discards every record.
+     */
+    public void truncate() throws IOException {
+        truncate(0);
+    }
+
+    /**
+     * Discards the records from a size the file had before, such as those
+     * of a failed group of appends.
+     */
+    public void truncate(long size) throws IOException {
+        channel.truncate(size);
+        channel.position(size);
+    }
+}
@@ -0,0 +1,750 @@
+package task.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import task.domain.DataVersion;
+import task.domain.Task;
+import task.domain.TaskCounts;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
+
+/**
+ * Tasks held in memory, ordered by id, and made durable by a write-ahead
+ * log. A write is appended to the log, forced to the disk and only then
+ * applied, so reads never see a write a crash could lose.
+ * <p>
+ * Writers that arrive while the log is being forced wait, and the next of
+ * them writes and forces all their records at once: under load, one force
+ * commits many writes. Each call is one log record, applied as a whole or
+ * not at all; bulk calls of more than MAX_OPS tasks take several.
+ * <p>
+ * Once the log outgrows snapshotBytes a new log is started and every task is
+ * written to a snapshot, after which the old log is deleted. Opening the
+ * store loads the snapshot and replays the logs written since.
+ */
+@ManagedResource(objectName = "task:type=JournalStore", description = "Write-ahead log and snapshots of the tasks")
+public class JournalStore {
+
+    /**
+     * What a write does to the tasks.
+     */
+    public enum OpType {
+        /** Stores a new task. */
+        ADD,
+        /** Replaces a task, if it exists. */
+        UPDATE,
+        /** Sets some properties of a task, if it exists. */
+        PATCH,
+        /** Deletes a task, if it exists. */
+        REMOVE
+    }
+
+    /**
+     * One change to one task.
+     */
+    public static final class Op {
+
+        final OpType              type;
+
+        final Task                task;
+
+        final long                id;
+
+        final Map<String, Object> fields;
+
+        private Op(OpType type, Task task, long id, Map<String, Object> fields) {
+            this.type = type;
+            this.task = task;
+            this.id = id;
+            this.fields = fields;
+        }
+
+        /**
+         * @param task a task with its id set
+         */
+        public static Op add(Task task) {
+            return new Op(OpType.ADD, task, task.getTaskID(), null);
+        }
+
+        public static Op update(Task task) {
+            return new Op(OpType.UPDATE, task, task.getTaskID(), null);
+        }
+
+        /**
+         * @param fields new values keyed by taskName, assignee, description or
+         *            date
+         */
+        public static Op patch(long id, Map<String, Object> fields) {
+            for (String field : fields.keySet()) {
+                if (!PATCHABLE.contains(field)) {
+                    throw new IllegalArgumentException("Task property " + field + " cannot be patched");
+                }
+            }
+            return new Op(OpType.PATCH, null, id, new TreeMap<String, Object>(fields));
+        }
+
+        public static Op remove(long id) {
+            return new Op(OpType.REMOVE, null, id, null);
+        }
+    }
+
+    /**
+     * The ops of one call waiting to be committed, and the outcome.
+     */
+    private static final class Commit {
+
+        final List<Op> ops;
+
+        final byte[]   record;
+
+        int            changed;
+
+        boolean        done;
+
+        IOException    failure;
+
+        Commit(List<Op> ops, byte[] record) {
+            this.ops = ops;
+            this.record = record;
+        }
+    }
+
+    private static final Logger       LOG            = LoggerFactory.getLogger(JournalStore.class);
+
+    /** Ops in one log record; keeps records well under the journal's 1 MB. */
+    public static final int           MAX_OPS        = 1000;
+
+    private static final List<String> PATCHABLE      = Arrays.asList("taskName", "assignee", "description", "date");
+
+    private static final Pattern      LOG_NAME       = Pattern.compile("tasks-(\\d+)\\.log");
+
+    private static final String       SNAPSHOT_NAME  = "tasks.snapshot";
+
+    private File                      directory;
+
+    /** Whether each commit is forced to the disk, to survive a machine crash. */
+    private boolean                   sync           = true;
+
+    private long                      snapshotBytes  = 64L * 1024 * 1024;
+
+    private final ConcurrentNavigableMap<Long, TaskView> tasks = new ConcurrentSkipListMap<Long, TaskView>();
+
+    private final AtomicLong          lastId         = new AtomicLong();
+
+    /** Tasks per assignee and day; changed by the committing thread, guarded by itself. */
+    private final TaskCounts          counts         = new TaskCounts();
+
+    /** Raised by every log record applied, so equal versions mean equal data. */
+    private volatile long             version;
+
+    private volatile long             modified       = System.currentTimeMillis();
+
+    /** Guards pending and committing; writers wait on it for their commit. */
+    private final Object              commitLock     = new Object();
+
+    private List<Commit>              pending        = new ArrayList<Commit>();
+
+    /** Set while one thread writes to the log, or switches to a new one. */
+    private boolean                   committing;
+
+    /** Written only by the committing thread. */
+    private volatile Journal          journal;
+
+    private long                      generation;
+
+    private final AtomicBoolean       snapshotting   = new AtomicBoolean();
+
+    private final AtomicLong          commits        = new AtomicLong();
+
+    private final AtomicLong          records        = new AtomicLong();
+
+    private final AtomicLong          snapshots      = new AtomicLong();
+
+    /**
+     * Loads the snapshot, replays the logs written since and opens the
+     * newest log for appending.
+     */
+    public void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        long start = System.currentTimeMillis();
+        File snapshot = new File(directory, SNAPSHOT_NAME);
+        generation = snapshot.exists() ? loadSnapshot(snapshot) : 0;
+        int replayed = 0;
+        for (Map.Entry<Long, File> log : logs().entrySet()) {
+            if (log.getKey() < generation) {
+                delete(log.getValue());
+                continue;
+            }
+            Journal replay = new Journal(log.getValue());
+            try {
+                for (byte[] record : replay.readAll()) {
+                    apply(decode(record));
+                    replayed++;
+                }
+            }
+            finally {
+                replay.close();
+            }
+            generation = log.getKey();
+        }
+        journal = new Journal(logFile(generation));
+        LOG.info("Loaded {} tasks from {}, replaying {} log records, in {} ms", new Object[] { tasks.size(), directory, replayed,
+                System.currentTimeMillis() - start });
+    }
+
+    /**
+     * Forces the log to the disk and closes it.
+     */
+    public void close() throws IOException, InterruptedException {
+        synchronized (commitLock) {
+            while (committing) {
+                commitLock.wait();
+            }
+            committing = true;
+        }
+        journal.sync();
+        journal.close();
+    }
+
+    /**
+     * @return the log files by generation
+     */
+    private TreeMap<Long, File> logs() {
+        TreeMap<Long, File> logs = new TreeMap<Long, File>();
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            Matcher matcher = LOG_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                logs.put(Long.valueOf(matcher.group(1)), file);
+            }
+        }
+        return logs;
+    }
+
+    private File logFile(long generation) {
+        return new File(directory, "tasks-" + generation + ".log");
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            LOG.warn("Could not delete {}", file);
+        }
+    }
+
+    public ConcurrentNavigableMap<Long, TaskView> getTasks() {
+        return tasks;
+    }
+
+    public TaskView get(Long id) {
+        return tasks.get(id);
+    }
+
+    /**
+     * @return an id no task has had before
+     */
+    public long nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    public DataVersion getDataVersion() {
+        return new DataVersion(version, new Date(modified));
+    }
+
+    public TaskSummary getSummary() {
+        synchronized (counts) {
+            return counts.toSummary();
+        }
+    }
+
+    /**
+     * Counts the tasks in memory again.
+     */
+    public TaskSummary recount() {
+        synchronized (counts) {
+            counts.clear();
+            for (TaskView view : tasks.values()) {
+                counts.add(view, 1);
+            }
+            return counts.toSummary();
+        }
+    }
+
+    /**
+     * Makes the ops durable and applies them, MAX_OPS at a time.
+     * @return the number of ops that changed a task
+     */
+    public int commit(List<Op> ops) {
+        int changed = 0;
+        for (int from = 0; from < ops.size(); from += MAX_OPS) {
+            changed += commitRecord(ops.subList(from, Math.min(from + MAX_OPS, ops.size())));
+        }
+        return changed;
+    }
+
+    public int commit(Op op) {
+        return commitRecord(Collections.singletonList(op));
+    }
+
+    /**
+     * Queues one record. The first writer to find nobody committing takes
+     * every queued record, writes them with a single force, applies them in
+     * order and wakes the writers whose records it committed.
+     */
+    private int commitRecord(List<Op> ops) {
+        Commit commit = new Commit(ops, encode(ops));
+        List<Commit> group;
+        synchronized (commitLock) {
+            pending.add(commit);
+            boolean interrupted = false;
+            while (committing && !commit.done) {
+                try {
+                    commitLock.wait();
+                }
+                catch (InterruptedException e) {
+                    // the record is queued and will be committed; wait for it
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (!commit.done) {
+                committing = true;
+                group = pending;
+                pending = new ArrayList<Commit>();
+            }
+            else {
+                group = null;
+            }
+        }
+        if (group != null) {
+            write(group);
+        }
+        if (commit.failure != null) {
+            throw new IllegalStateException("Could not write to " + journal.getFile(), commit.failure);
+        }
+        return commit.changed;
+    }
+
+    /**
+     * Writes, forces and applies a group of records, then hands the log to
+     * the next writer.
+     */
+    private void write(List<Commit> group) {
+        IOException failure = null;
+        boolean full = false;
+        long end = 0;
+        try {
+            end = journal.size();
+            for (Commit commit : group) {
+                journal.append(commit.record, false);
+            }
+            if (sync) {
+                journal.sync();
+            }
+            commits.incrementAndGet();
+            records.addAndGet(group.size());
+            for (Commit commit : group) {
+                commit.changed = apply(commit.ops);
+            }
+            full = journal.size() > snapshotBytes;
+        }
+        catch (IOException e) {
+            failure = e;
+            try {
+                // a torn record would hide every record appended after it
+                journal.truncate(end);
+            }
+            catch (IOException again) {
+                LOG.error("Could not cut a failed commit off " + journal.getFile(), again);
+            }
+        }
+        synchronized (commitLock) {
+            for (Commit commit : group) {
+                commit.failure = failure;
+                commit.done = true;
+            }
+            committing = false;
+            commitLock.notifyAll();
+        }
+        if (full) {
+            snapshotInBackground();
+        }
+    }
+
+    /**
+     * Applies the ops of one log record; only the committing thread calls it.
+     * @return the number of ops that changed a task
+     */
+    private int apply(List<Op> ops) {
+        int changed = 0;
+        for (Op op : ops) {
+            TaskView current = tasks.get(op.id);
+            TaskView next = null;
+            switch (op.type) {
+            case ADD:
+                next = new TaskView(op.task);
+                if (op.id > lastId.get()) {
+                    lastId.set(op.id);
+                }
+                break;
+            case UPDATE:
+                next = current == null ? null : new TaskView(op.task);
+                break;
+            case PATCH:
+                next = current == null ? null : patched(current, op.fields);
+                break;
+            case REMOVE:
+                break;
+            }
+            if (next == null && (current == null || op.type != OpType.REMOVE)) {
+                // an update, patch or removal of a task that is not there
+                continue;
+            }
+            // under the lock of the counts, so a recount sees both or neither
+            synchronized (counts) {
+                if (current != null) {
+                    counts.add(current, -1);
+                }
+                if (next != null) {
+                    tasks.put(op.id, next);
+                    counts.add(next, 1);
+                }
+                else {
+                    tasks.remove(op.id);
+                }
+            }
+            changed++;
+        }
+        version++;
+        modified = System.currentTimeMillis();
+        return changed;
+    }
+
+    private static TaskView patched(TaskView view, Map<String, Object> fields) {
+        String taskName = view.getTaskName();
+        String assignee = view.getAssignee();
+        String description = view.getDescription();
+        Date date = view.getDate();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if ("taskName".equals(field.getKey())) {
+                taskName = (String) field.getValue();
+            }
+            else if ("assignee".equals(field.getKey())) {
+                assignee = (String) field.getValue();
+            }
+            else if ("description".equals(field.getKey())) {
+                description = (String) field.getValue();
+            }
+            else {
+                date = (Date) field.getValue();
+            }
+        }
+        return new TaskView(view.getTaskID(), taskName, assignee, description, date);
+    }
+
+    /**
+     * A log record: the number of ops, then each as its type and either a
+     * task, an id, or an id, a bit per patchable property and the values.
+     */
+    private static byte[] encode(List<Op> ops) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * ops.size());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(ops.size());
+            for (Op op : ops) {
+                out.writeByte(op.type.ordinal());
+                if (op.task != null) {
+                    TaskRecords.write(op.task, out);
+                }
+                else {
+                    out.writeLong(op.id);
+                }
+                if (op.type == OpType.PATCH) {
+                    int present = 0;
+                    for (int i = 0; i < PATCHABLE.size(); i++) {
+                        if (op.fields.containsKey(PATCHABLE.get(i))) {
+                            present |= 1 << i;
+                        }
+                    }
+                    out.writeByte(present);
+                    for (String field : PATCHABLE) {
+                        if (op.fields.containsKey(field)) {
+                            Object value = op.fields.get(field);
+                            out.writeBoolean(value != null);
+                            if (value instanceof Date) {
+                                out.writeLong(((Date) value).getTime());
+                            }
+                            else if (value != null) {
+                                out.writeUTF((String) value);
+                            }
+                        }
+                    }
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not encode a log record", e);
+        }
+    }
+
+    private static List<Op> decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int count = in.readInt();
+        List<Op> ops = new ArrayList<Op>(count);
+        for (int i = 0; i < count; i++) {
+            OpType type = OpType.values()[in.readByte()];
+            if (type == OpType.ADD || type == OpType.UPDATE) {
+                Task task = TaskRecords.read(in);
+                ops.add(new Op(type, task, task.getTaskID(), null));
+                continue;
+            }
+            long id = in.readLong();
+            Map<String, Object> fields = null;
+            if (type == OpType.PATCH) {
+                fields = new TreeMap<String, Object>();
+                int present = in.readByte();
+                for (int bit = 0; bit < PATCHABLE.size(); bit++) {
+                    if ((present & 1 << bit) != 0) {
+                        String field = PATCHABLE.get(bit);
+                        Object value = null;
+                        if (in.readBoolean()) {
+                            value = "date".equals(field) ? new Date(in.readLong()) : in.readUTF();
+                        }
+                        fields.put(field, value);
+                    }
+                }
+            }
+            ops.add(new Op(type, null, id, fields));
+        }
+        return ops;
+    }
+
+    /**
+     * Starts a snapshot on its own thread, unless one is running.
+     */
+    private void snapshotInBackground() {
+        if (!snapshotting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    writeSnapshot();
+                }
+                catch (Exception e) {
+                    LOG.error("Could not snapshot " + directory + "; the log keeps growing until a snapshot succeeds", e);
+                }
+                finally {
+                    snapshotting.set(false);
+                }
+            }
+        }, "task-journal-snapshot");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @ManagedOperation(description = "Writes a snapshot and deletes the log it replaces")
+    public void snapshot() throws IOException, InterruptedException {
+        if (!snapshotting.compareAndSet(false, true)) {
+            throw new IllegalStateException("A snapshot is already being written");
+        }
+        try {
+            writeSnapshot();
+        }
+        finally {
+            snapshotting.set(false);
+        }
+    }
+
+    /**
+     * Switches writers to a new log while holding off commits, long enough
+     * to copy the task references; then writes the copy, renames it into
+     * place and deletes the old log.
+     */
+    private void writeSnapshot() throws IOException, InterruptedException {
+        List<TaskView> copy;
+        long snapshotVersion;
+        long snapshotGeneration;
+        synchronized (commitLock) {
+            while (committing) {
+                commitLock.wait();
+            }
+            committing = true;
+        }
+        try {
+            copy = new ArrayList<TaskView>(tasks.values());
+            snapshotVersion = version;
+            snapshotGeneration = generation + 1;
+            Journal next = new Journal(logFile(snapshotGeneration));
+            journal.sync();
+            journal.close();
+            journal = next;
+            generation = snapshotGeneration;
+        }
+        finally {
+            synchronized (commitLock) {
+                committing = false;
+                commitLock.notifyAll();
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        File temporary = new File(directory, SNAPSHOT_NAME + ".tmp");
+        delete(temporary);
+        Journal out = new Journal(temporary);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeLong(snapshotGeneration);
+            header.writeLong(snapshotVersion);
+            header.writeLong(lastId.get());
+            header.writeInt(copy.size());
+            out.append(bytes.toByteArray(), false);
+            for (int from = 0; from < copy.size(); from += MAX_OPS) {
+                bytes = new ByteArrayOutputStream(64 * MAX_OPS);
+                DataOutputStream chunk = new DataOutputStream(bytes);
+                for (TaskView view : copy.subList(from, Math.min(from + MAX_OPS, copy.size()))) {
+                    TaskRecords.write(toTask(view), chunk);
+                }
+                out.append(bytes.toByteArray(), false);
+            }
+            out.sync();
+        }
+        finally {
+            out.close();
+        }
+        File snapshot = new File(directory, SNAPSHOT_NAME);
+        if (!temporary.renameTo(snapshot)) {
+            delete(snapshot);
+            if (!temporary.renameTo(snapshot)) {
+                throw new IOException("Could not rename " + temporary + " to " + snapshot);
+            }
+        }
+        for (Map.Entry<Long, File> log : logs().headMap(snapshotGeneration).entrySet()) {
+            delete(log.getValue());
+        }
+        snapshots.incrementAndGet();
+        LOG.info("Wrote a snapshot of {} tasks to {} in {} ms", new Object[] { copy.size(), snapshot, System.currentTimeMillis() - start });
+    }
+
+    /**
+     * @return the generation of the first log not in the snapshot
+     */
+    private long loadSnapshot(File file) throws IOException {
+        Journal in = new Journal(file);
+        try {
+            List<byte[]> chunks = in.readAll();
+            if (chunks.isEmpty()) {
+                throw new IOException(file + " has no header");
+            }
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(chunks.get(0)));
+            long snapshotGeneration = header.readLong();
+            version = header.readLong();
+            lastId.set(header.readLong());
+            int count = header.readInt();
+            for (byte[] chunk : chunks.subList(1, chunks.size())) {
+                DataInputStream records = new DataInputStream(new ByteArrayInputStream(chunk));
+                while (records.available() > 0) {
+                    Task task = TaskRecords.read(records);
+                    TaskView view = new TaskView(task);
+                    tasks.put(task.getTaskID(), view);
+                    counts.add(view, 1);
+                }
+            }
+            if (tasks.size() != count) {
+                throw new IOException(file + " holds " + tasks.size() + " of its " + count + " tasks");
+            }
+            return snapshotGeneration;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return a new Task with the values of the view
+     */
+    public static Task toTask(TaskView view) {
+        Task task = new Task();
+        task.setID(view.getTaskID());
+        task.setTaskName(view.getTaskName());
+        task.setAssignee(view.getAssignee());
+        task.setDescription(view.getDescription());
+        task.setDate(view.getDate());
+        return task;
+    }
+
+    @ManagedAttribute(description = "Forces of the log, each committing one or more records")
+    public long getCommits() {
+        return commits.get();
+    }
+
+    @ManagedAttribute(description = "Bytes in the current log")
+    public long getLogBytes() throws IOException {
+        return journal.size();
+    }
+
+    @ManagedAttribute(description = "Records committed per force of the log")
+    public double getMeanGroupSize() {
+        long count = commits.get();
+        return count == 0 ? 0 : (double) records.get() / count;
+    }
+
+    @ManagedAttribute(description = "Log records committed")
+    public long getRecords() {
+        return records.get();
+    }
+
+    @ManagedAttribute(description = "Snapshots written")
+    public long getSnapshots() {
+        return snapshots.get();
+    }
+
+    @ManagedAttribute(description = "Tasks in memory")
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public void setSnapshotBytes(long snapshotBytes) {
+        this.snapshotBytes = snapshotBytes;
+    }
+
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+}
@@ -0,0 +1,74 @@
+package task.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import task.domain.Task;
+
+/**
+ * Binary form of a task in journal records: the id (-1 if none), three
+ * nullable strings and the date in milliseconds (-1 if none).
+ */
+public final class TaskRecords {
+
+    private TaskRecords() {
+    }
+
+    public static Task read(DataInputStream in) throws IOException {
+        Task task = new Task();
+        long id = in.readLong();
+        if (id != -1) {
+            task.setID(id);
+        }
+        task.setTaskName(readString(in));
+        task.setAssignee(readString(in));
+        task.setDescription(readString(in));
+        long date = in.readLong();
+        task.setDate(date == -1 ? null : new Date(date));
+        return task;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static void write(Task task, DataOutputStream out) throws IOException {
+        out.writeLong(task.getTaskID() == null ? -1 : task.getTaskID());
+        writeString(task.getTaskName(), out);
+        writeString(task.getAssignee(), out);
+        writeString(task.getDescription(), out);
+        out.writeLong(task.getDate() == null ? -1 : task.getDate().getTime());
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * @return a record holding a type byte followed by the task
+     */
+    public static byte[] toRecord(byte type, Task task) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        write(task, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return a stream over the record, positioned after its type byte
+     */
+    public static DataInputStream open(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        in.skipBytes(1);
+        return in;
+    }
+}
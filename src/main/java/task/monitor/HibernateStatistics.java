@@ -0,0 +1,227 @@
+package task.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Publishes the statistics of the Hibernate SessionFactory over JMX as
+ * task:type=HibernateStatistics and on the diagnostics page. Gathering them
+ * costs a little on every session, so it is off unless
+ * task.hibernate.statistics is set, and can be switched on and off while
+ * the application runs.
+ */
+@ManagedResource(objectName = "task:type=HibernateStatistics", description = "Hibernate SessionFactory statistics")
+public class HibernateStatistics {
+
+    /**
+     * The figures of one HQL or SQL query since the statistics were cleared.
+     */
+    public static class Query {
+
+        private final String query;
+
+        private final long   executions;
+
+        private final long   avgMillis;
+
+        private final long   maxMillis;
+
+        private final long   rows;
+
+        private final long   cacheHits;
+
+        Query(String query, QueryStatistics statistics) {
+            this.query = query;
+            this.executions = statistics.getExecutionCount();
+            this.avgMillis = statistics.getExecutionAvgTime();
+            this.maxMillis = statistics.getExecutionMaxTime();
+            this.rows = statistics.getExecutionRowCount();
+            this.cacheHits = statistics.getCacheHitCount();
+        }
+
+        public long getAvgMillis() {
+            return avgMillis;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        @Override
+        public String toString() {
+            return maxMillis + " ms max, " + avgMillis + " ms avg, " + executions + " runs, " + rows + " rows: " + query;
+        }
+    }
+
+    /** Queries listed as the slowest. */
+    private static final int SLOWEST = 10;
+
+    private Statistics       statistics;
+
+    @ManagedOperation(description = "Starts counting afresh")
+    public void clear() {
+        statistics.clear();
+    }
+
+    /**
+     * @return the main counters by name, in the order the diagnostics page
+     *         shows them
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<String, Long>();
+        counters.put("Sessions opened", statistics.getSessionOpenCount());
+        counters.put("Transactions", statistics.getTransactionCount());
+        counters.put("Statements prepared", statistics.getPrepareStatementCount());
+        counters.put("Flushes", statistics.getFlushCount());
+        counters.put("Queries executed", statistics.getQueryExecutionCount());
+        counters.put("Slowest query (ms)", statistics.getQueryExecutionMaxTime());
+        counters.put("Entities loaded", statistics.getEntityLoadCount());
+        counters.put("Entities fetched", statistics.getEntityFetchCount());
+        counters.put("Entities inserted", statistics.getEntityInsertCount());
+        counters.put("Entities updated", statistics.getEntityUpdateCount());
+        counters.put("Entities deleted", statistics.getEntityDeleteCount());
+        counters.put("Collections loaded", statistics.getCollectionLoadCount());
+        counters.put("Collections fetched", statistics.getCollectionFetchCount());
+        counters.put("Second-level cache hits", statistics.getSecondLevelCacheHitCount());
+        counters.put("Second-level cache misses", statistics.getSecondLevelCacheMissCount());
+        counters.put("Second-level cache hit ratio (%)", (long) getSecondLevelCacheHitRatio());
+        counters.put("Query cache hits", statistics.getQueryCacheHitCount());
+        counters.put("Query cache misses", statistics.getQueryCacheMissCount());
+        counters.put("Optimistic lock failures", statistics.getOptimisticFailureCount());
+        return counters;
+    }
+
+    @ManagedAttribute(description = "Collections loaded from the database")
+    public long getCollectionLoadCount() {
+        return statistics.getCollectionLoadCount();
+    }
+
+    @ManagedAttribute(description = "Entities fetched lazily or by id")
+    public long getEntityFetchCount() {
+        return statistics.getEntityFetchCount();
+    }
+
+    @ManagedAttribute(description = "Entities loaded from the database")
+    public long getEntityLoadCount() {
+        return statistics.getEntityLoadCount();
+    }
+
+    @ManagedAttribute(description = "Statements prepared")
+    public long getPrepareStatementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    @ManagedAttribute(description = "Query cache hits per hundred lookups")
+    public double getQueryCacheHitRatio() {
+        return ratio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+    }
+
+    @ManagedAttribute(description = "HQL and SQL queries executed")
+    public long getQueryExecutionCount() {
+        return statistics.getQueryExecutionCount();
+    }
+
+    @ManagedAttribute(description = "Milliseconds the slowest query took")
+    public long getQueryExecutionMaxTime() {
+        return statistics.getQueryExecutionMaxTime();
+    }
+
+    @ManagedAttribute(description = "The slowest query")
+    public String getQueryExecutionMaxTimeQueryString() {
+        return statistics.getQueryExecutionMaxTimeQueryString();
+    }
+
+    @ManagedAttribute(description = "Second-level cache hits per hundred lookups")
+    public double getSecondLevelCacheHitRatio() {
+        return ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount());
+    }
+
+    private static double ratio(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : hits * 100.0 / lookups;
+    }
+
+    @ManagedAttribute(description = "Sessions opened")
+    public long getSessionOpenCount() {
+        return statistics.getSessionOpenCount();
+    }
+
+    /**
+     * @return the queries with the longest single execution, slowest first
+     */
+    public List<Query> getSlowestQueries() {
+        List<Query> queries = new ArrayList<Query>();
+        for (String query : statistics.getQueries()) {
+            queries.add(new Query(query, statistics.getQueryStatistics(query)));
+        }
+        Collections.sort(queries, new Comparator<Query>() {
+
+            @Override
+            public int compare(Query a, Query b) {
+                return a.maxMillis < b.maxMillis ? 1 : a.maxMillis == b.maxMillis ? 0 : -1;
+            }
+        });
+        return queries.size() > SLOWEST ? queries.subList(0, SLOWEST) : queries;
+    }
+
+    @ManagedAttribute(description = "The slowest queries with their maximum and average time, runs and rows")
+    public String[] getSlowestQueryLines() {
+        List<String> lines = new ArrayList<String>();
+        for (Query query : getSlowestQueries()) {
+            lines.add(query.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedAttribute(description = "When the counting started")
+    public Date getStartTime() {
+        return new Date(statistics.getStartTime());
+    }
+
+    @ManagedAttribute(description = "Transactions completed")
+    public long getTransactionCount() {
+        return statistics.getTransactionCount();
+    }
+
+    @ManagedAttribute(description = "Whether Hibernate gathers statistics")
+    public boolean isStatisticsEnabled() {
+        return statistics.isStatisticsEnabled();
+    }
+
+    @ManagedAttribute
+    public void setStatisticsEnabled(boolean enabled) {
+        statistics.setStatisticsEnabled(enabled);
+    }
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.statistics = sessionFactory.getStatistics();
+    }
+}
@@ -0,0 +1,111 @@
+package task.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations into fixed buckets, from under 50 microseconds to over
+ * ten seconds. Recording is lock-free and allocates nothing, so it can sit
+ * on hot paths; percentiles are read from the buckets and are accurate to
+ * the bucket bounds.
+ */
+public class LatencyHistogram {
+
+    /** Upper bounds of the buckets in microseconds; the last bucket is unbounded. */
+    private static final long[] BOUNDS_MICROS = { 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000,
+            100000, 200000, 500000, 1000000, 2000000, 5000000, 10000000 };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+
+    private final AtomicLong      count   = new AtomicLong();
+
+    private final AtomicLong      total   = new AtomicLong();
+
+    private final AtomicLong      max     = new AtomicLong();
+
+    /**
+     * @param nanos a duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = nanos / 1000L;
+        int bucket = 0;
+        while (bucket < BOUNDS_MICROS.length && micros >= BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // another thread raised the maximum meanwhile; compare again
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMaxMillis() {
+        return max.get() / 1000000.0;
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / 1000000.0 / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding that percentile, or the
+     *         maximum if it falls into the unbounded bucket
+     */
+    public double getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BOUNDS_MICROS.length; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MICROS[bucket] / 1000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @return one line per non-empty bucket, such as "<0.5ms: 42"
+     */
+    public String[] getBuckets() {
+        String[] lines = new String[buckets.length()];
+        int used = 0;
+        for (int bucket = 0; bucket < buckets.length(); bucket++) {
+            long hits = buckets.get(bucket);
+            if (hits > 0) {
+                String label = bucket < BOUNDS_MICROS.length ? "<" + millis(BOUNDS_MICROS[bucket]) : ">=" + millis(BOUNDS_MICROS[BOUNDS_MICROS.length - 1]);
+                lines[used++] = label + ": " + hits;
+            }
+        }
+        String[] result = new String[used];
+        System.arraycopy(lines, 0, result, 0, used);
+        return result;
+    }
+
+    private static String millis(long micros) {
+        return micros % 1000 == 0 ? micros / 1000 + "ms" : micros / 1000.0 + "ms";
+    }
+
+    /**
+     * Starts counting afresh. Durations recorded while resetting may be lost.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < buckets.length(); bucket++) {
+            buckets.set(bucket, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
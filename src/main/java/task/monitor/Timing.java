@@ -0,0 +1,102 @@
+package task.monitor;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.export.naming.SelfNaming;
+
+/**
+ * The latencies and failures of one timed method or request, published over
+ * JMX as task:type=Timing,name=&lt;name&gt;.
+ */
+@ManagedResource(description = "Latency of a timed method or request")
+public class Timing implements SelfNaming {
+
+    private final String           name;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicLong       errors  = new AtomicLong();
+
+    public Timing(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param nanos how long the call took
+     * @param failed whether it ended with an exception
+     */
+    public void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @ManagedAttribute(description = "Calls timed, including failed ones")
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @ManagedAttribute(description = "Calls that ended with an exception")
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @ManagedAttribute(description = "Calls per duration bucket")
+    public String[] getHistogram() {
+        return latency.getBuckets();
+    }
+
+    @ManagedAttribute(description = "Longest call in milliseconds")
+    public double getMaxMillis() {
+        return latency.getMaxMillis();
+    }
+
+    @ManagedAttribute(description = "Mean call in milliseconds")
+    public double getMeanMillis() {
+        return latency.getMeanMillis();
+    }
+
+    @ManagedAttribute(description = "Median call in milliseconds")
+    public double get50thMillis() {
+        return latency.getPercentileMillis(50);
+    }
+
+    @ManagedAttribute(description = "99th percentile call in milliseconds")
+    public double get99thMillis() {
+        return latency.getPercentileMillis(99);
+    }
+
+    @ManagedAttribute(description = "99.9th percentile call in milliseconds")
+    public double get999thMillis() {
+        return latency.getPercentileMillis(99.9);
+    }
+
+    @ManagedOperation(description = "Starts counting afresh")
+    public void reset() {
+        latency.reset();
+        errors.set(0);
+    }
+
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        return new ObjectName("task:type=Timing,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s count=%d errors=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms", name, getCount(), getErrors(), getMeanMillis(),
+                get50thMillis(), get99thMillis(), get999thMillis(), getMaxMillis());
+    }
+}
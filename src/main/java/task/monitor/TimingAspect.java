@@ -0,0 +1,45 @@
+package task.monitor;
+
+import java.lang.reflect.Method;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every TaskManager call, every request handler of TaskController and
+ * every validation into {@link Timings}, failed calls included. Ordered
+ * first, so a TaskManager timing covers its whole transaction, commit
+ * included.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TimingAspect {
+
+    @Autowired
+    private Timings timings;
+
+    @Around("execution(* task.tasks.TaskManager.*(..))"
+            + " || execution(@org.springframework.web.bind.annotation.RequestMapping * task.web.TaskController.*(..))"
+            + " || execution(* org.springframework.validation.Validator.validate(..)) && (bean(validator) || bean(taskValidator))")
+    public Object time(ProceedingJoinPoint call) throws Throwable {
+        Method method = ((MethodSignature) call.getSignature()).getMethod();
+        Timing timing = timings.get(call.getTarget().getClass(), method);
+        boolean failed = true;
+        long start = System.nanoTime();
+        try {
+            Object result = call.proceed();
+            failed = false;
+            return result;
+        }
+        finally {
+            timing.record(System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package task.monitor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MalformedObjectNameException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * All the timings of the application, one per timed method and target class
+ * and one per named request or view. A timing is created on its first call
+ * and published over JMX from then on; later calls find it without locking
+ * or allocating.
+ */
+@Component
+@ManagedResource(objectName = "task:type=Timings", description = "Latency of the timed methods and requests")
+public class Timings {
+
+    private static final Logger                                          LOG      = LoggerFactory.getLogger(Timings.class);
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, Timing>> byMethod = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, Timing>>();
+
+    private final ConcurrentMap<String, Timing>                          byName   = new ConcurrentHashMap<String, Timing>();
+
+    @Autowired(required = false)
+    private MBeanExporter                                                mbeanExporter;
+
+    /**
+     * @return the timing of a method called on an instance of a class, named
+     *         like HibernateTaskManager.addTask(Task)
+     */
+    public Timing get(Class<?> targetClass, Method method) {
+        ConcurrentMap<Method, Timing> timings = byMethod.get(targetClass);
+        if (timings == null) {
+            timings = new ConcurrentHashMap<Method, Timing>();
+            ConcurrentMap<Method, Timing> existing = byMethod.putIfAbsent(targetClass, timings);
+            if (existing != null) {
+                timings = existing;
+            }
+        }
+        Timing timing = timings.get(method);
+        if (timing == null) {
+            timing = get(name(targetClass, method));
+            timings.putIfAbsent(method, timing);
+        }
+        return timing;
+    }
+
+    /**
+     * @return the timing of that name, such as "request GET /list"
+     */
+    public Timing get(String name) {
+        Timing timing = byName.get(name);
+        if (timing == null) {
+            timing = new Timing(name);
+            Timing existing = byName.putIfAbsent(name, timing);
+            if (existing != null) {
+                return existing;
+            }
+            register(timing);
+        }
+        return timing;
+    }
+
+    private static String name(Class<?> targetClass, Method method) {
+        StringBuilder name = new StringBuilder(targetClass.getSimpleName()).append('.').append(method.getName()).append('(');
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            name.append(i == 0 ? "" : ", ").append(types[i].getSimpleName());
+        }
+        return name.append(')').toString();
+    }
+
+    private void register(Timing timing) {
+        if (mbeanExporter == null) {
+            return;
+        }
+        try {
+            // named explicitly, as the exporter would otherwise add an identity key
+            mbeanExporter.registerManagedResource(timing, timing.getObjectName());
+        }
+        catch (MalformedObjectNameException e) {
+            LOG.warn("Could not publish the timing " + timing.getName() + " over JMX", e);
+        }
+        catch (RuntimeException e) {
+            LOG.warn("Could not publish the timing " + timing.getName() + " over JMX", e);
+        }
+    }
+
+    /**
+     * @return every timing, in name order
+     */
+    public List<Timing> getAll() {
+        List<Timing> timings = new ArrayList<Timing>(byName.values());
+        Collections.sort(timings, new Comparator<Timing>() {
+
+            @Override
+            public int compare(Timing a, Timing b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return timings;
+    }
+
+    @ManagedAttribute(description = "Count, errors and latency percentiles per timing")
+    public String[] getSummary() {
+        List<String> lines = new ArrayList<String>();
+        for (Timing timing : getAll()) {
+            lines.add(timing.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedOperation(description = "Starts every timing afresh")
+    public void reset() {
+        for (Timing timing : byName.values()) {
+            timing.reset();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package task.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import task.domain.DataVersion;
+import task.domain.TaskPage;
+import task.domain.TaskView;
+
+/**
+ * Date range pages of the in-memory stores, ordered by start date and then
+ * id like those of the database managers. The stores have no date index, so
+ * they walk every task in the range, but only offer those among the limit + 1
+ * nearest past the cursor so far, which are kept in a heap whose head is the
+ * farthest of them.
+ * @param <T> what the store keeps of an offered task until the page is
+ *            built, such as its slot or its TaskView
+ */
+final class DateKeyset<T> {
+
+    private static final class Entry<T> {
+
+        final long date;
+
+        final long id;
+
+        final T    task;
+
+        Entry(long date, long id, T task) {
+            this.date = date;
+            this.id = id;
+            this.task = task;
+        }
+    }
+
+    private final boolean                 previous;
+
+    /** Whether there is a cursor to seek from. */
+    private final boolean                 seeking;
+
+    private final long                    cursorTime;
+
+    private final long                    cursor;
+
+    private final int                     limit;
+
+    /** The nearest tasks offered so far, the farthest of them at the head. */
+    private final PriorityQueue<Entry<T>> nearest;
+
+    /**
+     * @param cursorDate the start date of the cursor task, or null for the
+     *            first or last page
+     * @param cursor the id of the cursor task, or null for the first or
+     *            last page
+     * @param limit the size of the page
+     */
+    DateKeyset(Date cursorDate, Long cursor, TaskPage.Direction direction, int limit) {
+        this.previous = direction == TaskPage.Direction.PREVIOUS;
+        this.seeking = cursorDate != null && cursor != null;
+        this.cursorTime = seeking ? cursorDate.getTime() : 0;
+        this.cursor = seeking ? cursor : 0;
+        this.limit = limit;
+        this.nearest = new PriorityQueue<Entry<T>>(limit + 1, new Comparator<Entry<T>>() {
+
+            @Override
+            public int compare(Entry<T> a, Entry<T> b) {
+                return fromCursor(b.date, b.id, a.date, a.id);
+            }
+        });
+    }
+
+    /**
+     * @return whether a task of the range with this start date and id is on
+     *         the side of the cursor being read, and among the limit + 1
+     *         nearest to it offered so far, so it should be offered
+     */
+    boolean wants(long date, long id) {
+        if (seeking && fromCursor(date, id, cursorTime, cursor) <= 0) {
+            return false;
+        }
+        Entry<T> farthest = nearest.size() > limit ? nearest.peek() : null;
+        return farthest == null || fromCursor(date, id, farthest.date, farthest.id) < 0;
+    }
+
+    /**
+     * Keeps a task that {@link #wants} it, in place of the farthest kept one
+     * if there are already limit + 1.
+     */
+    void offer(long date, long id, T task) {
+        if (nearest.size() > limit) {
+            nearest.poll();
+        }
+        nearest.add(new Entry<T>(date, id, task));
+    }
+
+    /**
+     * @return the kept tasks, nearest to the cursor first; one more than the
+     *         page holds if there are more
+     */
+    List<T> nearest() {
+        List<Entry<T>> entries = new ArrayList<Entry<T>>(nearest);
+        Collections.sort(entries, Collections.reverseOrder(nearest.comparator()));
+        List<T> tasks = new ArrayList<T>(entries.size());
+        for (Entry<T> entry : entries) {
+            tasks.add(entry.task);
+        }
+        return tasks;
+    }
+
+    /**
+     * @param views the views of {@link #nearest()}, in its order
+     */
+    TaskPage page(List<TaskView> views, DataVersion version) {
+        boolean more = views.size() > limit;
+        List<TaskView> page = new ArrayList<TaskView>(views.subList(0, Math.min(limit, views.size())));
+        if (previous) {
+            Collections.reverse(page);
+            return new TaskPage(page, seeking, more, version);
+        }
+        return new TaskPage(page, more, seeking, version);
+    }
+
+    /**
+     * @return less than zero if task a comes before task b in the order
+     *         read from the cursor, more than zero if after
+     */
+    private int fromCursor(long dateA, long idA, long dateB, long idB) {
+        int order = dateA != dateB ? (dateA < dateB ? -1 : 1) : (idA < idB ? -1 : idA == idB ? 0 : 1);
+        return previous ? -order : order;
+    }
+}
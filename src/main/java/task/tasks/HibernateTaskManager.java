@@ -1,22 +1,99 @@
 package task.tasks;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Resource;
 
+import org.hibernate.CacheMode;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cache.CacheKey;
+import org.hibernate.cache.access.SoftLock;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.jdbc.Work;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import task.domain.DataVersion;
 import task.domain.Task;
+import task.domain.TaskCounts;
+import task.domain.TaskPage;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
+import task.jdbc.ReadWriteRoutingDataSource;
 
 @Repository
 public class HibernateTaskManager implements TaskManager {
 
+    /** Query cache region of {@link #listTask()}. */
+    public static final String  LIST_CACHE_REGION = "task.list";
+
+    /** Selects the list columns of Task t as TaskViews. */
+    private static final String VIEW_SELECT       = "SELECT new task.domain.TaskView(t.taskID, t.taskName, t.assignee, t.description, t.date) FROM Task t";
+
+    /** Selects the list columns of ArchivedTask t as TaskViews. */
+    private static final String ARCHIVE_SELECT    = "SELECT new task.domain.TaskView(t.taskID, t.taskName, t.assignee, t.description, t.date) FROM ArchivedTask t";
+
+    /** Copies the tasks with the ids in :ids to the archive. */
+    private static final String ARCHIVE_INSERT    = "INSERT INTO ArchivedTask (taskID, taskName, assignee, description, date)"
+                                                          + " SELECT t.taskID, t.taskName, t.assignee, t.description, t.date FROM Task t WHERE t.taskID IN (:ids)";
+
+    /** Ids bound into one IN list; Oracle accepts at most 1000. */
+    private static final int    MAX_IN_LIST       = 500;
+
+    /** Properties patchTask may change, with their Hibernate types. */
+    private static final Map<String, Type> PATCHABLE = new LinkedHashMap<String, Type>();
+
+    static {
+        PATCHABLE.put("taskName", StandardBasicTypes.STRING);
+        PATCHABLE.put("assignee", StandardBasicTypes.STRING);
+        PATCHABLE.put("description", StandardBasicTypes.STRING);
+        PATCHABLE.put("date", StandardBasicTypes.DATE);
+    }
+
     @Resource(name = "sessionFactory")
-    private SessionFactory sessionFactory;
+    private SessionFactory             sessionFactory;
+
+    @Autowired
+    private TaskVersion                taskVersion;
+
+    @Autowired
+    private TaskCounters               taskCounters;
+
+    /** Absent when the application runs on a single data source. */
+    @Autowired(required = false)
+    private ReadWriteRoutingDataSource routing;
+
+    /** Tasks written between flushes of the bulk methods. */
+    @Value("${task.batch.size}")
+    private int                        batchSize = 50;
+
+    /** Rows fetched per round-trip, and read between session clears, by exports. */
+    @Value("${task.export.fetch.size}")
+    private int                        fetchSize = 500;
 
     public HibernateTaskManager() {
     }
@@ -30,42 +107,461 @@ public class HibernateTaskManager implements TaskManager {
     @Override
     public void addTask(Task task) {
         getCurrentSession().save(task);
+        TaskCounts delta = new TaskCounts();
+        delta.add(task.getAssignee(), task.getDate(), 1);
+        taskCounters.apply(delta);
+        taskVersion.bump();
+    }
+
+    /**
+     * Inserts the tasks through a StatelessSession, so none of them enter the
+     * persistence context, and sends them to the database in JDBC batches.
+     */
+    @Transactional
+    @Override
+    public void addTasks(Collection<Task> tasks) {
+        lockUntilCompletion(null);
+        StatelessSession session = openStatelessSession();
+        TaskCounts delta = new TaskCounts();
+        try {
+            int count = 0;
+            for (Task task : tasks) {
+                session.insert(task);
+                delta.add(task.getAssignee(), task.getDate(), 1);
+                if (++count % batchSize == 0) {
+                    flush(session);
+                }
+            }
+            flush(session);
+        }
+        finally {
+            session.close();
+        }
+        taskCounters.apply(delta);
+        taskVersion.bump();
+    }
+
+    /**
+     * Picks the ids first, so the INSERT ... SELECT and the DELETE move the
+     * same tasks. Both are bulk HQL, which evicts the cached tasks and lists.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    @Override
+    public int archiveTasks(Date before, int limit) {
+        Session session = getCurrentSession();
+        List<Long> ids = session.createQuery("SELECT t.taskID FROM Task t WHERE t.date < :before ORDER BY t.date, t.taskID")
+                .setDate("before", before)
+                .setMaxResults(limit)
+                .list();
+        Map<Long, TaskView> locked = taskCounters.lock(ids);
+        ids = new ArrayList<Long>(locked.keySet());
+        int moved = 0;
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()));
+            session.createQuery(ARCHIVE_INSERT).setParameterList("ids", chunk).executeUpdate();
+            moved += session.createQuery("DELETE FROM Task t WHERE t.taskID IN (:ids)").setParameterList("ids", chunk).executeUpdate();
+        }
+        if (moved > 0) {
+            taskCounters.apply(removed(locked.values()));
+            taskVersion.bump();
+        }
+        return moved;
+    }
+
+    /**
+     * @return the change to the counts when the tasks are deleted
+     */
+    private static TaskCounts removed(Collection<TaskView> tasks) {
+        TaskCounts delta = new TaskCounts();
+        for (TaskView task : tasks) {
+            delta.add(task, -1);
+        }
+        return delta;
+    }
+
+    /**
+     * StatelessSession and JDBC writes bypass the second-level cache. So, as
+     * Hibernate does for its own updates, the cache entries of the changed
+     * tasks are soft-locked through the Task region's access strategy before
+     * the write and unlocked once the transaction has completed: a reader
+     * that loaded a task before the commit cannot cache it, neither meanwhile
+     * nor afterwards. The cached list queries are evicted on completion.
+     */
+    private void lockUntilCompletion(List<Long> changed) {
+        final EntityPersister persister = getTaskPersister();
+        final Map<CacheKey, SoftLock> locks = new LinkedHashMap<CacheKey, SoftLock>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(int status) {
+                sessionFactory.getCache().evictQueryRegion(LIST_CACHE_REGION);
+                for (Map.Entry<CacheKey, SoftLock> lock : locks.entrySet()) {
+                    persister.getCacheAccessStrategy().unlockItem(lock.getKey(), lock.getValue());
+                }
+            }
+        });
+        if (changed != null && persister.hasCache()) {
+            SessionImplementor session = (SessionImplementor) getCurrentSession();
+            for (Long id : changed) {
+                CacheKey key = new CacheKey(id, persister.getIdentifierType(), persister.getRootEntityName(), session.getEntityMode(), session.getFactory());
+                locks.put(key, persister.getCacheAccessStrategy().lockItem(key, null));
+            }
+        }
+    }
+
+    /**
+     * Sends any statements still queued in the JDBC batch of the session.
+     */
+    private void flush(StatelessSession session) {
+        ((SessionImplementor) session).getBatcher().executeBatch();
+    }
+
+    /**
+     * Reads the tasks through a forward-only cursor and clears the session
+     * every fetchSize rows, so neither the entities nor their dirty-check
+     * snapshots accumulate.
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public void exportTasks(TaskCallback callback) throws IOException {
+        Session session = getCurrentSession();
+        ScrollableResults results = session.createQuery("FROM Task t ORDER BY t.taskID")
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE)
+                .setFetchSize(fetchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            int count = 0;
+            while (results.next()) {
+                callback.processTask((Task) results.get(0));
+                if (++count % fetchSize == 0) {
+                    session.clear();
+                }
+            }
+        }
+        finally {
+            results.close();
+        }
     }
 
     protected Session getCurrentSession() {
         return sessionFactory.getCurrentSession();
     }
 
+    /**
+     * Replica reads may be older than the caches, which are shared by the
+     * whole node: they read the caches but never fill them, so a task read
+     * from a replica cannot hide a newer one from a later primary read.
+     */
+    private CacheMode readCacheMode(Session session) {
+        return routing != null && routing.isReplicaRead() ? CacheMode.GET : session.getCacheMode();
+    }
+
+    private Task load(Long id) {
+        Session session = getCurrentSession();
+        CacheMode cacheMode = session.getCacheMode();
+        session.setCacheMode(readCacheMode(session));
+        try {
+            return (Task) session.get(Task.class, id);
+        }
+        finally {
+            session.setCacheMode(cacheMode);
+        }
+    }
+
+    @Override
+    public DataVersion getDataVersion() {
+        return taskVersion.latest();
+    }
+
+    @Transactional(readOnly = true)
     @Override
-    public Task getTaskByID(Integer id) {
+    public Task getTaskByID(Long id) {
         Task temptask;
-        temptask = (Task) getCurrentSession().get(Task.class, id);
+        temptask = load(id);
         //  System.out.println(temptask.getTaskName());
         return temptask;
     }
 
+    @Transactional(readOnly = true)
+    @Override
+    public TaskSummary getTaskSummary() {
+        return taskCounters.read();
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskView getTaskView(Long id) {
+        Task task = load(id);
+        return task == null ? null : new TaskView(task);
+    }
+
     @SuppressWarnings("unchecked")
-    //@Transactional(readOnly = true)
+    @Transactional(readOnly = true)
     @Override
     public List<Task> listTask() {
-        return getCurrentSession().createQuery("FROM Task").list();
+        Session session = getCurrentSession();
+        return session.createQuery("FROM Task").setCacheable(true).setCacheRegion(LIST_CACHE_REGION).setCacheMode(readCacheMode(session)).list();
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskPage listArchive(Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(ARCHIVE_SELECT, null, Collections.<String, Object> emptyMap(), cursor, limit, direction);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskPage listTask(Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(VIEW_SELECT, null, Collections.<String, Object> emptyMap(), cursor, limit, direction);
     }
 
+    @Transactional(readOnly = true)
     @Override
+    public TaskPage findByAssignee(String assignee, Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(VIEW_SELECT, "t.assignee = :assignee", Collections.<String, Object> singletonMap("assignee", assignee), cursor, limit, direction);
+    }
+
     @Transactional(readOnly = true)
-    public Task readTask(int id) {
+    @Override
+    public TaskPage findByDateRange(Date from, Date to, Date cursorDate, Long cursor, int limit, TaskPage.Direction direction) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        StringBuilder filter = new StringBuilder();
+        if (from != null) {
+            filter.append("t.date >= :from");
+            parameters.put("from", from);
+        }
+        if (to != null) {
+            filter.append(from != null ? " AND t.date <= :to" : "t.date <= :to");
+            parameters.put("to", to);
+        }
+        if (filter.length() == 0) {
+            filter.append("t.date IS NOT NULL");
+        }
+        return seek(VIEW_SELECT, filter.toString(), parameters, true, cursorDate, cursor, limit, direction);
+    }
+
+    private TaskPage seek(String select, String filter, Map<String, Object> parameters, Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(select, filter, parameters, false, null, cursor, limit, direction);
+    }
+
+    /**
+     * Reads one keyset page of the tasks matching an HQL condition on t.
+     * Only the displayed columns are selected, straight into TaskViews, so
+     * no entities or dirty-check snapshots are created.
+     * <p>
+     * The page carries the version read in the same transaction, which the
+     * task list's entity tag is built from, so it is never answered from the
+     * query cache: writes on other nodes do not invalidate that.
+     * @param select VIEW_SELECT or ARCHIVE_SELECT
+     * @param filter the condition, or null for all tasks
+     * @param parameters the named parameters of the condition
+     * @param byDate whether the page is ordered by t.date, then t.taskID,
+     *            with cursorDate as the date of the cursor
+     */
+    @SuppressWarnings("unchecked")
+    private TaskPage seek(String select, String filter, Map<String, Object> parameters, boolean byDate, Date cursorDate, Long cursor, int limit,
+            TaskPage.Direction direction) {
+        DataVersion version = taskVersion.current();
+        boolean previous = direction == TaskPage.Direction.PREVIOUS;
+        boolean seeking = cursor != null && (!byDate || cursorDate != null);
+        String beyond = previous ? " <" : " >";
+        String order = previous ? " DESC" : " ASC";
+        StringBuilder hql = new StringBuilder(select);
+        if (filter != null) {
+            hql.append(" WHERE ").append(filter);
+        }
+        if (seeking) {
+            hql.append(filter != null ? " AND" : " WHERE");
+            if (byDate) {
+                // the inclusive bound on the date alone lets the index seek to the cursor
+                hql.append(" t.date").append(beyond).append("= :cursorDate AND (t.date").append(beyond).append(" :cursorDate OR t.taskID").append(beyond)
+                        .append(" :cursor)");
+            }
+            else {
+                hql.append(" t.taskID").append(beyond).append(" :cursor");
+            }
+        }
+        hql.append(" ORDER BY ");
+        if (byDate) {
+            hql.append("t.date").append(order).append(", ");
+        }
+        hql.append("t.taskID").append(order);
+
+        Query query = getCurrentSession().createQuery(hql.toString()).setReadOnly(true);
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if (parameter.getValue() instanceof Date) {
+                // bound as DATE, not TIMESTAMP, so Oracle can use the D_DATE index
+                query.setDate(parameter.getKey(), (Date) parameter.getValue());
+            }
+            else {
+                query.setParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+        if (seeking) {
+            query.setLong("cursor", cursor);
+            if (byDate) {
+                query.setDate("cursorDate", cursorDate);
+            }
+        }
+        // one extra row tells us whether there is anything beyond this page
+        List<TaskView> views = query.setMaxResults(limit + 1).list();
+        boolean more = views.size() > limit;
+        if (more) {
+            views = views.subList(0, limit);
+        }
+        if (previous) {
+            Collections.reverse(views);
+            return new TaskPage(views, seeking, more, version);
+        }
+        return new TaskPage(views, more, seeking, version);
+    }
+
+    /**
+     * Builds one SQL UPDATE that sets just the given properties. It is sent
+     * on the session's connection rather than as bulk HQL, which would empty
+     * the whole Task cache region; only the patched task is locked out of it.
+     */
+    @Transactional
+    @Override
+    public int patchTask(final Long id, final Map<String, Object> fields) {
+        final Session session = getCurrentSession();
+        if (fields.isEmpty()) {
+            Number count = (Number) session.createQuery("SELECT COUNT(t) FROM Task t WHERE t.taskID = :id").setLong("id", id).uniqueResult();
+            return count.intValue();
+        }
+
+        AbstractEntityPersister persister = getTaskPersister();
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(persister.getTableName()).append(" SET ");
+        for (String field : fields.keySet()) {
+            if (!PATCHABLE.containsKey(field)) {
+                throw new IllegalArgumentException("Task property " + field + " cannot be patched");
+            }
+            if (sql.charAt(sql.length() - 1) != ' ') {
+                sql.append(", ");
+            }
+            sql.append(persister.getPropertyColumnNames(field)[0]).append(" = ?");
+        }
+        sql.append(" WHERE ").append(persister.getIdentifierColumnNames()[0]).append(" = ?");
+
+        TaskView old = null;
+        if (fields.containsKey("assignee") || fields.containsKey("date")) {
+            old = taskCounters.lock(Collections.singleton(id)).get(id);
+        }
+        lockUntilCompletion(Collections.singletonList(id));
+        final int[] rows = new int[1];
+        session.doWork(new Work() {
+
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(sql.toString());
+                try {
+                    int index = 1;
+                    for (Map.Entry<String, Object> field : fields.entrySet()) {
+                        PATCHABLE.get(field.getKey()).nullSafeSet(statement, field.getValue(), index++, (SessionImplementor) session);
+                    }
+                    statement.setLong(index, id);
+                    rows[0] = statement.executeUpdate();
+                }
+                finally {
+                    statement.close();
+                }
+            }
+        });
+        int updated = rows[0];
+        if (updated > 0) {
+            if (old != null) {
+                TaskCounts delta = new TaskCounts();
+                delta.add(old, -1);
+                delta.add(fields.containsKey("assignee") ? (String) fields.get("assignee") : old.getAssignee(),
+                        fields.containsKey("date") ? (Date) fields.get("date") : old.getDate(), 1);
+                taskCounters.apply(delta);
+            }
+            taskVersion.bump();
+        }
+        return updated;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Task readTask(long id) {
         // TODO Auto-generated method stub
-        Task task = (Task) getCurrentSession().get(Task.class, id);
+        Task task = load(id);
         return task;
     }
 
     @Transactional
     @Override
-    public void removeTask(Integer id) {
-        Task task = (Task) getCurrentSession().load(Task.class, id);
-        if (task != null) {
-            getCurrentSession().delete(task);
+    public boolean removeTask(Long id) {
+        return removeTasks(Collections.singleton(id)) > 0;
+    }
+
+    /**
+     * Deletes over JDBC on the session's connection, like patchTask, so only
+     * the deleted tasks are locked out of the cache rather than the whole Task
+     * region emptied.
+     */
+    @Transactional
+    @Override
+    public int removeTasks(Collection<Long> ids) {
+        Map<Long, TaskView> locked = taskCounters.lock(ids);
+        final List<Long> remaining = new ArrayList<Long>(locked.keySet());
+        lockUntilCompletion(remaining);
+        AbstractEntityPersister persister = getTaskPersister();
+        final String delete = "DELETE FROM " + persister.getTableName() + " WHERE " + persister.getIdentifierColumnNames()[0] + " IN (";
+        final int[] rows = new int[1];
+        getCurrentSession().doWork(new Work() {
+
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                for (int from = 0; from < remaining.size(); from += MAX_IN_LIST) {
+                    List<Long> chunk = remaining.subList(from, Math.min(from + MAX_IN_LIST, remaining.size()));
+                    StringBuilder sql = new StringBuilder(delete);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        sql.append(i == 0 ? "?" : ", ?");
+                    }
+                    PreparedStatement statement = connection.prepareStatement(sql.append(')').toString());
+                    try {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            statement.setLong(i + 1, chunk.get(i));
+                        }
+                        rows[0] += statement.executeUpdate();
+                    }
+                    finally {
+                        statement.close();
+                    }
+                }
+            }
+        });
+        int deleted = rows[0];
+        if (deleted > 0) {
+            taskCounters.apply(removed(locked.values()));
+            taskVersion.bump();
         }
+        return deleted;
+    }
+
+    @Transactional
+    @Override
+    public TaskSummary rebuildTaskSummary() {
+        return taskCounters.rebuild();
+    }
+
+    /**
+     * Opens a StatelessSession on the connection of the current transaction,
+     * so that bulk writes commit or roll back together with it.
+     */
+    @SuppressWarnings("deprecation")
+    protected StatelessSession openStatelessSession() {
+        return sessionFactory.openStatelessSession(getCurrentSession().connection());
+    }
+
+    /**
+     * @return the persister of Task, for the table and columns it is mapped to
+     */
+    private AbstractEntityPersister getTaskPersister() {
+        return (AbstractEntityPersister) ((SessionFactoryImplementor) sessionFactory).getEntityPersister(Task.class.getName());
     }
 
     protected void setCurrentSession(SessionFactory sessionFactory) {
@@ -81,7 +577,42 @@ public class HibernateTaskManager implements TaskManager {
     @Transactional
     public void updateTask(Task task) {
         // TODO Auto-generated method stub
+        TaskCounts delta = new TaskCounts();
+        if (task.getTaskID() != null) {
+            delta = removed(taskCounters.lock(Collections.singleton(task.getTaskID())).values());
+        }
         getCurrentSession().merge(task);
+        delta.add(task.getAssignee(), task.getDate(), 1);
+        taskCounters.apply(delta);
+        taskVersion.bump();
 
     }
+
+    @Transactional
+    @Override
+    public void updateTasks(Collection<Task> tasks) {
+        List<Long> ids = new ArrayList<Long>(tasks.size());
+        for (Task task : tasks) {
+            ids.add(task.getTaskID());
+        }
+        lockUntilCompletion(ids);
+        TaskCounts delta = removed(taskCounters.lock(ids).values());
+        StatelessSession session = openStatelessSession();
+        try {
+            int count = 0;
+            for (Task task : tasks) {
+                session.update(task);
+                delta.add(task.getAssignee(), task.getDate(), 1);
+                if (++count % batchSize == 0) {
+                    flush(session);
+                }
+            }
+            flush(session);
+        }
+        finally {
+            session.close();
+        }
+        taskCounters.apply(delta);
+        taskVersion.bump();
+    }
 }
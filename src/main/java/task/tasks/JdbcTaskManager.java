@@ -0,0 +1,614 @@
+package task.tasks;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import task.domain.DataVersion;
+import task.domain.Task;
+import task.domain.TaskCounts;
+import task.domain.TaskPage;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
+import task.id.TaskIdGenerator;
+import task.id.TimeOrderedIds;
+
+/**
+ * TaskManager on plain JDBC: fixed SQL strings, so the pool's prepared
+ * statement cache serves every call after the first, and rows mapped
+ * straight from the ResultSet. Selected with task.manager=jdbcTaskManager.
+ * <p>
+ * It does not go through Hibernate, so it neither reads nor evicts the
+ * second-level cache; run it instead of HibernateTaskManager, not next to it.
+ */
+@Repository
+public class JdbcTaskManager implements TaskManager {
+
+    private static final String COLUMNS        = "TASK_ID, TASK_NAME, ASSIGNEE, DESCRIPTION, D_DATE";
+
+    private static final String SELECT         = "SELECT " + COLUMNS + " FROM TASK";
+
+    private static final String ARCHIVE_SELECT = "SELECT " + COLUMNS + " FROM TASK_ARCHIVE";
+
+    /** The oldest tasks dated before a day; the (D_DATE, TASK_ID) index returns them in order. */
+    private static final String AGED           = "SELECT TASK_ID FROM TASK WHERE D_DATE < ? ORDER BY D_DATE, TASK_ID";
+
+    private static final String INSERT         = "INSERT INTO TASK (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String UPDATE         = "UPDATE TASK SET TASK_NAME = ?, ASSIGNEE = ?, DESCRIPTION = ?, D_DATE = ? WHERE TASK_ID = ?";
+
+    private static final String DELETE         = "DELETE FROM TASK WHERE TASK_ID = ?";
+
+    private static final String COUNT          = "SELECT COUNT(*) FROM TASK WHERE TASK_ID = ?";
+
+    /** Ids bound into one IN list; Oracle accepts at most 1000. */
+    private static final int    MAX_IN_LIST    = 500;
+
+    /** Properties patchTask may change, with their columns. */
+    private static final Map<String, String> PATCHABLE = new LinkedHashMap<String, String>();
+
+    static {
+        PATCHABLE.put("taskName", "TASK_NAME");
+        PATCHABLE.put("assignee", "ASSIGNEE");
+        PATCHABLE.put("description", "DESCRIPTION");
+        PATCHABLE.put("date", "D_DATE");
+    }
+
+    private static final RowMapper<Task> TASK_MAPPER = new RowMapper<Task>() {
+
+        @Override
+        public Task mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Task task = new Task();
+            task.setID(rs.getLong(1));
+            task.setTaskName(rs.getString(2));
+            task.setAssignee(rs.getString(3));
+            task.setDescription(rs.getString(4));
+            task.setDate(rs.getDate(5));
+            return task;
+        }
+    };
+
+    private static final RowMapper<TaskView> VIEW_MAPPER = new RowMapper<TaskView>() {
+
+        @Override
+        public TaskView mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new TaskView(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getDate(5));
+        }
+    };
+
+    private JdbcTemplate                 jdbcTemplate;
+
+    private DataFieldMaxValueIncrementer idSequence;
+
+    @Autowired
+    private TaskVersion                  taskVersion;
+
+    @Autowired
+    private TaskCounters                 taskCounters;
+
+    /** Tasks sent per JDBC batch by the bulk methods. */
+    @Value("${task.batch.size}")
+    private int                          batchSize = 50;
+
+    /** Rows fetched per round-trip by exports. */
+    @Value("${task.export.fetch.size}")
+    private int                          fetchSize = 500;
+
+    /** "sequence" for blocks of ID_SEQ, or "time" for ids minted in memory. */
+    @Value("${task.id.generator}")
+    private String                       idGenerator = TaskIdGenerator.SEQUENCE;
+
+    @Value("${task.id.node}")
+    private int                          idNode;
+
+    /** The time-ordered ids, or null to use ID_SEQ. */
+    private TimeOrderedIds               timeOrderedIds;
+
+    /** The last id handed out and the end of its block, guarded by this. */
+    private long                         nextId;
+
+    private long                         blockEnd;
+
+    public JdbcTaskManager() {
+    }
+
+    /**
+     * @param dataSource the database the tasks are in
+     * @param idSequence ID_SEQ, shared with HibernateTaskManager
+     */
+    @Autowired
+    public JdbcTaskManager(@Qualifier("dataSource") DataSource dataSource, @Qualifier("taskIdSequence") DataFieldMaxValueIncrementer idSequence) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.idSequence = idSequence;
+    }
+
+    @PostConstruct
+    public void configureIds() {
+        timeOrderedIds = TaskIdGenerator.forMode(idGenerator, idNode);
+    }
+
+    @Transactional
+    @Override
+    public void addTask(Task task) {
+        task.setID(allocateId());
+        jdbcTemplate.update(INSERT, new Object[] { task.getTaskID(), task.getTaskName(), task.getAssignee(), task.getDescription(), sqlDate(task.getDate()) }, new int[] { Types.BIGINT,
+                Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.DATE });
+        TaskCounts delta = new TaskCounts();
+        delta.add(task.getAssignee(), task.getDate(), 1);
+        taskCounters.apply(delta);
+        taskVersion.bump();
+    }
+
+    @Transactional
+    @Override
+    public void addTasks(Collection<Task> tasks) {
+        TaskCounts delta = new TaskCounts();
+        for (Task task : tasks) {
+            task.setID(allocateId());
+            delta.add(task.getAssignee(), task.getDate(), 1);
+        }
+        batch(INSERT, new ArrayList<Task>(tasks), false);
+        taskCounters.apply(delta);
+        taskVersion.bump();
+    }
+
+    /**
+     * Picks the ids first, so the INSERT ... SELECT and the DELETE move the
+     * same tasks.
+     */
+    @Transactional
+    @Override
+    public int archiveTasks(Date before, int limit) {
+        final java.sql.Date day = sqlDate(before);
+        final int maxRows = limit;
+        List<Long> ids = jdbcTemplate.query(new PreparedStatementCreator() {
+
+            @Override
+            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                PreparedStatement ps = con.prepareStatement(AGED);
+                ps.setMaxRows(maxRows);
+                ps.setDate(1, day);
+                return ps;
+            }
+        }, new RowMapper<Long>() {
+
+            @Override
+            public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+                return rs.getLong(1);
+            }
+        });
+        Map<Long, TaskView> locked = taskCounters.lock(ids);
+        ids = new ArrayList<Long>(locked.keySet());
+        int moved = 0;
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            Object[] chunk = ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size())).toArray();
+            String in = inList(chunk.length);
+            jdbcTemplate.update("INSERT INTO TASK_ARCHIVE (" + COLUMNS + ") " + SELECT + " WHERE TASK_ID IN " + in, chunk);
+            moved += jdbcTemplate.update("DELETE FROM TASK WHERE TASK_ID IN " + in, chunk);
+        }
+        if (moved > 0) {
+            taskCounters.apply(removed(locked.values()));
+            taskVersion.bump();
+        }
+        return moved;
+    }
+
+    /**
+     * @return the change to the counts when the tasks are deleted
+     */
+    private static TaskCounts removed(Collection<TaskView> tasks) {
+        TaskCounts delta = new TaskCounts();
+        for (TaskView task : tasks) {
+            delta.add(task, -1);
+        }
+        return delta;
+    }
+
+    /**
+     * Hands out ids the way Hibernate's pooled optimizer does for Task, so
+     * both managers can share ID_SEQ: each NEXTVAL n reserves the
+     * Task.ID_BLOCK_SIZE ids below n, except the very first value of the
+     * sequence, which starts the first block. The block below a NEXTVAL
+     * must therefore be unused, which is why an existing ID_SEQ is
+     * recreated past MAX(TASK_ID) rather than altered (see DB/sequence.sql).
+     * With task.id.generator=time, takes them from the same TimeOrderedIds
+     * as Hibernate instead, without a lock.
+     */
+    private long allocateId() {
+        return timeOrderedIds != null ? timeOrderedIds.next() : allocateSequenceId();
+    }
+
+    private synchronized long allocateSequenceId() {
+        if (nextId >= blockEnd) {
+            int blockSize = Integer.parseInt(Task.ID_BLOCK_SIZE);
+            long value = idSequence.nextLongValue();
+            if (blockEnd == 0 && value < blockSize) {
+                nextId = value;
+                blockEnd = idSequence.nextLongValue();
+            }
+            else {
+                nextId = value - blockSize;
+                blockEnd = value;
+            }
+        }
+        return nextId++;
+    }
+
+    /**
+     * Sends the tasks as INSERTs or UPDATEs in batches of batchSize.
+     */
+    private void batch(String sql, final List<Task> tasks, final boolean update) {
+        for (int from = 0; from < tasks.size(); from += batchSize) {
+            final List<Task> chunk = tasks.subList(from, Math.min(from + batchSize, tasks.size()));
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+
+                @Override
+                public int getBatchSize() {
+                    return chunk.size();
+                }
+
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    Task task = chunk.get(i);
+                    int column = 1;
+                    if (!update) {
+                        ps.setLong(column++, task.getTaskID());
+                    }
+                    ps.setString(column++, task.getTaskName());
+                    ps.setString(column++, task.getAssignee());
+                    ps.setString(column++, task.getDescription());
+                    ps.setObject(column++, sqlDate(task.getDate()), Types.DATE);
+                    if (update) {
+                        ps.setLong(column, task.getTaskID());
+                    }
+                }
+            });
+        }
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public void exportTasks(final TaskCallback callback) throws IOException {
+        try {
+            jdbcTemplate.query(new PreparedStatementCreator() {
+
+                @Override
+                public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                    PreparedStatement ps = con.prepareStatement(SELECT + " ORDER BY TASK_ID");
+                    ps.setFetchSize(fetchSize);
+                    return ps;
+                }
+            }, new RowCallbackHandler() {
+
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    try {
+                        callback.processTask(TASK_MAPPER.mapRow(rs, 0));
+                    }
+                    catch (IOException e) {
+                        throw new CallbackFailure(e);
+                    }
+                }
+            });
+        }
+        catch (CallbackFailure e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskPage findByAssignee(String assignee, Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(SELECT, "ASSIGNEE = ?", Collections.<Object> singletonList(assignee), cursor, limit, direction);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskPage findByDateRange(Date from, Date to, Date cursorDate, Long cursor, int limit, TaskPage.Direction direction) {
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder filter = new StringBuilder();
+        if (from != null) {
+            filter.append("D_DATE >= ?");
+            parameters.add(sqlDate(from));
+        }
+        if (to != null) {
+            filter.append(from != null ? " AND D_DATE <= ?" : "D_DATE <= ?");
+            parameters.add(sqlDate(to));
+        }
+        if (filter.length() == 0) {
+            filter.append("D_DATE IS NOT NULL");
+        }
+        return seek(SELECT, filter.toString(), parameters, true, cursorDate, cursor, limit, direction);
+    }
+
+    @Override
+    public DataVersion getDataVersion() {
+        return taskVersion.latest();
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public Task getTaskByID(Long id) {
+        List<Task> tasks = jdbcTemplate.query(SELECT + " WHERE TASK_ID = ?", TASK_MAPPER, id);
+        return tasks.isEmpty() ? null : tasks.get(0);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskSummary getTaskSummary() {
+        return taskCounters.read();
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskView getTaskView(Long id) {
+        List<TaskView> views = jdbcTemplate.query(SELECT + " WHERE TASK_ID = ?", VIEW_MAPPER, id);
+        return views.isEmpty() ? null : views.get(0);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public List<Task> listTask() {
+        return jdbcTemplate.query(SELECT, TASK_MAPPER);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskPage listArchive(Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(ARCHIVE_SELECT, null, Collections.emptyList(), cursor, limit, direction);
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public TaskPage listTask(Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(SELECT, null, Collections.emptyList(), cursor, limit, direction);
+    }
+
+    private TaskPage seek(String select, String filter, List<Object> parameters, Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(select, filter, parameters, false, null, cursor, limit, direction);
+    }
+
+    /**
+     * Reads one keyset page of the tasks matching an SQL condition. The row
+     * limit is applied with Statement.setMaxRows, which works on every
+     * driver and stops the fetch after limit + 1 rows.
+     * @param select SELECT or ARCHIVE_SELECT
+     * @param filter the condition, or null for all tasks
+     * @param parameters the values of the condition's placeholders
+     * @param byDate whether the page is ordered by D_DATE, then TASK_ID,
+     *            with cursorDate as the date of the cursor
+     */
+    private TaskPage seek(String select, String filter, List<Object> parameters, boolean byDate, Date cursorDate, Long cursor, int limit,
+            TaskPage.Direction direction) {
+        DataVersion version = taskVersion.current();
+        boolean previous = direction == TaskPage.Direction.PREVIOUS;
+        boolean seeking = cursor != null && (!byDate || cursorDate != null);
+        String beyond = previous ? " <" : " >";
+        String order = previous ? " DESC" : " ASC";
+        StringBuilder sql = new StringBuilder(select);
+        if (filter != null) {
+            sql.append(" WHERE ").append(filter);
+        }
+        final List<Object> arguments = new ArrayList<Object>(parameters);
+        if (seeking) {
+            sql.append(filter != null ? " AND" : " WHERE");
+            if (byDate) {
+                // the inclusive bound on the date alone lets the index seek to the cursor
+                sql.append(" D_DATE").append(beyond).append("= ? AND (D_DATE").append(beyond).append(" ? OR TASK_ID").append(beyond).append(" ?)");
+                arguments.add(sqlDate(cursorDate));
+                arguments.add(sqlDate(cursorDate));
+            }
+            else {
+                sql.append(" TASK_ID").append(beyond).append(" ?");
+            }
+            arguments.add(cursor);
+        }
+        sql.append(" ORDER BY ");
+        if (byDate) {
+            sql.append("D_DATE").append(order).append(", ");
+        }
+        sql.append("TASK_ID").append(order);
+
+        final String query = sql.toString();
+        // one extra row tells us whether there is anything beyond this page
+        final int maxRows = limit + 1;
+        List<TaskView> views = jdbcTemplate.query(new PreparedStatementCreator() {
+
+            @Override
+            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                PreparedStatement ps = con.prepareStatement(query);
+                ps.setMaxRows(maxRows);
+                for (int i = 0; i < arguments.size(); i++) {
+                    ps.setObject(i + 1, arguments.get(i));
+                }
+                return ps;
+            }
+        }, VIEW_MAPPER);
+
+        boolean more = views.size() > limit;
+        if (more) {
+            views = views.subList(0, limit);
+        }
+        if (previous) {
+            Collections.reverse(views);
+            return new TaskPage(views, seeking, more, version);
+        }
+        return new TaskPage(views, more, seeking, version);
+    }
+
+    @Transactional
+    @Override
+    public int patchTask(Long id, Map<String, Object> fields) {
+        if (fields.isEmpty()) {
+            return jdbcTemplate.queryForInt(COUNT, id);
+        }
+
+        StringBuilder sql = new StringBuilder("UPDATE TASK SET ");
+        List<Object> arguments = new ArrayList<Object>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            String column = PATCHABLE.get(field.getKey());
+            if (column == null) {
+                throw new IllegalArgumentException("Task property " + field.getKey() + " cannot be patched");
+            }
+            if (!arguments.isEmpty()) {
+                sql.append(", ");
+            }
+            sql.append(column).append(" = ?");
+            arguments.add(field.getValue() instanceof Date ? sqlDate((Date) field.getValue()) : field.getValue());
+        }
+        sql.append(" WHERE TASK_ID = ?");
+        arguments.add(id);
+
+        int[] types = new int[arguments.size()];
+        int i = 0;
+        for (String field : fields.keySet()) {
+            types[i++] = "date".equals(field) ? Types.DATE : Types.VARCHAR;
+        }
+        types[i] = Types.BIGINT;
+        TaskView old = null;
+        if (fields.containsKey("assignee") || fields.containsKey("date")) {
+            old = taskCounters.lock(Collections.singleton(id)).get(id);
+        }
+        int updated = jdbcTemplate.update(sql.toString(), arguments.toArray(), types);
+        if (updated > 0) {
+            if (old != null) {
+                TaskCounts delta = new TaskCounts();
+                delta.add(old, -1);
+                delta.add(fields.containsKey("assignee") ? (String) fields.get("assignee") : old.getAssignee(),
+                        fields.containsKey("date") ? (Date) fields.get("date") : old.getDate(), 1);
+                taskCounters.apply(delta);
+            }
+            taskVersion.bump();
+        }
+        return updated;
+    }
+
+    @Transactional(readOnly = true)
+    @Override
+    public Task readTask(long id) {
+        return getTaskByID(id);
+    }
+
+    @Transactional
+    @Override
+    public boolean removeTask(Long id) {
+        TaskView old = taskCounters.lock(Collections.singleton(id)).get(id);
+        if (old == null || jdbcTemplate.update(DELETE, id) == 0) {
+            return false;
+        }
+        taskCounters.apply(removed(Collections.singleton(old)));
+        taskVersion.bump();
+        return true;
+    }
+
+    @Transactional
+    @Override
+    public int removeTasks(Collection<Long> ids) {
+        Map<Long, TaskView> locked = taskCounters.lock(ids);
+        List<Long> remaining = new ArrayList<Long>(locked.keySet());
+        int deleted = 0;
+        for (int from = 0; from < remaining.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = remaining.subList(from, Math.min(from + MAX_IN_LIST, remaining.size()));
+            deleted += jdbcTemplate.update("DELETE FROM TASK WHERE TASK_ID IN " + inList(chunk.size()), chunk.toArray());
+        }
+        if (deleted > 0) {
+            taskCounters.apply(removed(locked.values()));
+            taskVersion.bump();
+        }
+        return deleted;
+    }
+
+    @Transactional
+    @Override
+    public TaskSummary rebuildTaskSummary() {
+        return taskCounters.rebuild();
+    }
+
+    /**
+     * Like Hibernate's merge, saves a task without an id as a new one.
+     */
+    @Transactional
+    @Override
+    public void updateTask(Task task) {
+        if (task.getTaskID() == null) {
+            addTask(task);
+        }
+        else {
+            updateTasks(Collections.singletonList(task));
+        }
+    }
+
+    /**
+     * Tasks whose id is not in TASK are ignored.
+     */
+    @Transactional
+    @Override
+    public void updateTasks(Collection<Task> tasks) {
+        List<Long> ids = new ArrayList<Long>(tasks.size());
+        for (Task task : tasks) {
+            ids.add(task.getTaskID());
+        }
+        Map<Long, TaskView> locked = taskCounters.lock(ids);
+        TaskCounts delta = removed(locked.values());
+        for (Task task : tasks) {
+            if (locked.containsKey(task.getTaskID())) {
+                delta.add(task.getAssignee(), task.getDate(), 1);
+            }
+        }
+        batch(UPDATE, new ArrayList<Task>(tasks), true);
+        taskCounters.apply(delta);
+        taskVersion.bump();
+    }
+
+    /**
+     * @return "(?, ?, ...)" with size placeholders
+     */
+    private static String inList(int size) {
+        StringBuilder in = new StringBuilder("(?");
+        for (int i = 1; i < size; i++) {
+            in.append(", ?");
+        }
+        return in.append(')').toString();
+    }
+
+    private static java.sql.Date sqlDate(Date date) {
+        return date == null ? null : new java.sql.Date(date.getTime());
+    }
+
+    /**
+     * Carries an IOException of the export callback out of the JDBC callback.
+     */
+    private static class CallbackFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        CallbackFailure(IOException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package task.tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import task.domain.DataVersion;
+import task.domain.Task;
+import task.domain.TaskPage;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
+import task.journal.JournalStore;
+import task.journal.JournalStore.Op;
+
+/**
+ * TaskManager over a {@link JournalStore}: writes are committed to its
+ * write-ahead log, many concurrent ones per disk force, and reads are served
+ * from its in-memory index without any database. Ids come from a counter
+ * instead of ID_SEQ. Selected with task.manager=journalTaskManager.
+ * <p>
+ * Searches by assignee or date walk the tasks in id order.
+ */
+@Transactional(propagation = Propagation.SUPPORTS)
+public class JournalTaskManager implements TaskManager {
+
+    /**
+     * Selects the tasks a search returns.
+     */
+    private interface Filter {
+
+        boolean matches(TaskView view);
+    }
+
+    private JournalStore store;
+
+    @Override
+    public void addTask(Task task) {
+        task.setID(store.nextId());
+        store.commit(Op.add(task));
+    }
+
+    @Override
+    public void addTasks(Collection<Task> tasks) {
+        List<Op> ops = new ArrayList<Op>(tasks.size());
+        for (Task task : tasks) {
+            task.setID(store.nextId());
+            ops.add(Op.add(task));
+        }
+        store.commit(ops);
+    }
+
+    /**
+     * The store has no archive; tasks stay until they are removed, so a
+     * scheduled archiver finds nothing to move.
+     * @return 0
+     */
+    @Override
+    public int archiveTasks(Date before, int limit) {
+        return 0;
+    }
+
+    @Override
+    public void exportTasks(TaskCallback callback) throws IOException {
+        for (TaskView view : store.getTasks().values()) {
+            callback.processTask(JournalStore.toTask(view));
+        }
+    }
+
+    @Override
+    public TaskPage findByAssignee(final String assignee, Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(new Filter() {
+
+            @Override
+            public boolean matches(TaskView view) {
+                return assignee.equals(view.getAssignee());
+            }
+        }, cursor, limit, direction);
+    }
+
+    @Override
+    public TaskPage findByDateRange(Date from, Date to, Date cursorDate, Long cursor, int limit, TaskPage.Direction direction) {
+        DataVersion version = store.getDataVersion();
+        DateKeyset<TaskView> keyset = new DateKeyset<TaskView>(cursorDate, cursor, direction, limit);
+        for (TaskView view : store.getTasks().values()) {
+            Date date = view.getDate();
+            if (date != null && (from == null || !date.before(from)) && (to == null || !date.after(to)) && keyset.wants(date.getTime(), view.getTaskID())) {
+                keyset.offer(date.getTime(), view.getTaskID(), view);
+            }
+        }
+        return keyset.page(keyset.nearest(), version);
+    }
+
+    @Override
+    public DataVersion getDataVersion() {
+        return store.getDataVersion();
+    }
+
+    @Override
+    public Task getTaskByID(Long id) {
+        TaskView view = store.get(id);
+        return view == null ? null : JournalStore.toTask(view);
+    }
+
+    @Override
+    public TaskSummary getTaskSummary() {
+        return store.getSummary();
+    }
+
+    @Override
+    public TaskView getTaskView(Long id) {
+        return store.get(id);
+    }
+
+    @Override
+    public List<Task> listTask() {
+        List<Task> tasks = new ArrayList<Task>();
+        for (TaskView view : store.getTasks().values()) {
+            tasks.add(JournalStore.toTask(view));
+        }
+        return tasks;
+    }
+
+    /**
+     * @return an empty page, as nothing is ever archived
+     */
+    @Override
+    public TaskPage listArchive(Long cursor, int limit, TaskPage.Direction direction) {
+        return new TaskPage(Collections.<TaskView> emptyList(), false, false, store.getDataVersion());
+    }
+
+    @Override
+    public TaskPage listTask(Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(null, cursor, limit, direction);
+    }
+
+    /**
+     * Walks the index from the cursor until limit + 1 tasks match. The
+     * version is read first, so it is never newer than the tasks.
+     * @param filter the condition, or null for all tasks
+     */
+    private TaskPage seek(Filter filter, Long cursor, int limit, TaskPage.Direction direction) {
+        DataVersion version = store.getDataVersion();
+        boolean previous = direction == TaskPage.Direction.PREVIOUS;
+        NavigableMap<Long, TaskView> tasks = store.getTasks();
+        if (previous) {
+            tasks = (cursor == null ? tasks : tasks.headMap(cursor, false)).descendingMap();
+        }
+        else if (cursor != null) {
+            tasks = tasks.tailMap(cursor, false);
+        }
+        // one extra row tells us whether there is anything beyond this page
+        List<TaskView> views = new ArrayList<TaskView>(limit + 1);
+        for (TaskView view : tasks.values()) {
+            if (filter == null || filter.matches(view)) {
+                views.add(view);
+                if (views.size() > limit) {
+                    break;
+                }
+            }
+        }
+
+        boolean more = views.size() > limit;
+        if (more) {
+            views = views.subList(0, limit);
+        }
+        if (previous) {
+            Collections.reverse(views);
+            return new TaskPage(views, cursor != null, more, version);
+        }
+        return new TaskPage(views, more, cursor != null, version);
+    }
+
+    @Override
+    public int patchTask(Long id, Map<String, Object> fields) {
+        if (fields.isEmpty()) {
+            return store.get(id) == null ? 0 : 1;
+        }
+        return store.commit(Op.patch(id, fields));
+    }
+
+    @Override
+    public Task readTask(long id) {
+        return getTaskByID(id);
+    }
+
+    @Override
+    public boolean removeTask(Long id) {
+        return store.get(id) != null && store.commit(Op.remove(id)) > 0;
+    }
+
+    @Override
+    public int removeTasks(Collection<Long> ids) {
+        List<Op> ops = new ArrayList<Op>(ids.size());
+        for (Long id : ids) {
+            if (store.get(id) != null) {
+                ops.add(Op.remove(id));
+            }
+        }
+        return ops.isEmpty() ? 0 : store.commit(ops);
+    }
+
+    @Override
+    public TaskSummary rebuildTaskSummary() {
+        return store.recount();
+    }
+
+    public void setStore(JournalStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Like JdbcTaskManager, saves a task without an id as a new one and
+     * ignores one whose id is not in the store.
+     */
+    @Override
+    public void updateTask(Task task) {
+        if (task.getTaskID() == null) {
+            addTask(task);
+        }
+        else if (store.get(task.getTaskID()) != null) {
+            store.commit(Op.update(task));
+        }
+    }
+
+    @Override
+    public void updateTasks(Collection<Task> tasks) {
+        List<Op> ops = new ArrayList<Op>(tasks.size());
+        for (Task task : tasks) {
+            if (store.get(task.getTaskID()) != null) {
+                ops.add(Op.update(task));
+            }
+        }
+        store.commit(ops);
+    }
+}
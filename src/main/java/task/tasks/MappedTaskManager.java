@@ -0,0 +1,987 @@
+package task.tasks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import task.domain.DataVersion;
+import task.domain.Task;
+import task.domain.TaskCounts;
+import task.domain.TaskPage;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
+
+/**
+ * TaskManager that keeps the tasks in fixed-width records of a memory-mapped
+ * file instead of a database, for deployments without Oracle. Selected with
+ * task.manager=mappedTaskManager.
+ * <p>
+ * The records live outside the Java heap, so millions of tasks cost the
+ * garbage collector next to nothing, and a restart maps the files again
+ * rather than loading them. A second file maps each id to its record slot,
+ * and deleted slots are chained into a free list for reuse.
+ * <p>
+ * Every record carries a CRC32, and an update is written to a fresh slot
+ * before the old one is freed, so a crash never leaves a half-written task
+ * in place of a whole one. A start after a crash finds the clean-shutdown
+ * flag unset, drops torn records and rebuilds the index and the free list in
+ * one pass over the slots. A clean close leaves the number of tasks in the
+ * header and the counts per assignee and day in tasks.counts, so a clean
+ * start reads those instead of walking the slots. Writes reach the disk when the operating system
+ * flushes them, which survives a crash of the process; set forceWrites to
+ * survive a crash of the machine as well.
+ * <p>
+ * Searches by assignee or date walk the ids in order, reading more records
+ * than the indexed database queries do.
+ */
+@Repository
+@Lazy
+@Transactional(propagation = Propagation.SUPPORTS)
+public class MappedTaskManager implements TaskManager {
+
+    private static final Logger  LOG           = LoggerFactory.getLogger(MappedTaskManager.class);
+
+    private static final Charset UTF8          = Charset.forName("UTF-8");
+
+    private static final int     MAGIC         = 0x5441534B;
+
+    /** Format 1 had no count of the live tasks in its header. */
+    private static final int     FORMAT        = 2;
+
+    /* Header: magic, format, clean flag, free list head (slot + 1, 0 for
+     * none), slots ever used, next id, last record sequence, data version
+     * and when it was raised, live tasks. */
+    private static final int     H_MAGIC       = 0;
+
+    private static final int     H_FORMAT      = 4;
+
+    private static final int     H_CLEAN       = 8;
+
+    private static final int     H_FREE_HEAD   = 12;
+
+    private static final int     H_HIGH_WATER  = 16;
+
+    private static final int     H_NEXT_ID     = 24;
+
+    private static final int     H_SEQUENCE    = 32;
+
+    private static final int     H_VERSION     = 40;
+
+    private static final int     H_MODIFIED    = 48;
+
+    private static final int     H_LIVE        = 56;
+
+    private static final int     HEADER_SIZE   = 64;
+
+    /* Record: state, CRC32 of the bytes from R_ID on, id (or the next free
+     * slot + 1 once freed), sequence, date, then each string as a length
+     * byte, NULL_LENGTH for null, and its UTF-8 bytes. */
+    private static final int     R_STATE       = 0;
+
+    private static final int     R_CRC         = 4;
+
+    private static final int     R_ID          = 8;
+
+    private static final int     R_NEXT_FREE   = R_ID;
+
+    private static final int     R_SEQUENCE    = 16;
+
+    private static final int     R_DATE        = 24;
+
+    private static final int     R_NAME        = 32;
+
+    private static final int     NAME_BYTES    = 30;
+
+    private static final int     R_ASSIGNEE    = R_NAME + 1 + NAME_BYTES;
+
+    private static final int     ASSIGNEE_BYTES = 30;
+
+    private static final int     R_DESCRIPTION = R_ASSIGNEE + 1 + ASSIGNEE_BYTES;
+
+    private static final int     DESCRIPTION_BYTES = 150;
+
+    private static final int     RECORD_SIZE   = 248;
+
+    private static final byte    FREE          = 0;
+
+    private static final byte    LIVE          = 1;
+
+    private static final int     NULL_LENGTH   = 0xFF;
+
+    private static final long    NO_DATE       = Long.MIN_VALUE;
+
+    /** Slots that fit in one mapping, which is limited to 2 GB. */
+    private static final int     MAX_SLOTS     = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    /** Directory of tasks.dat, the records, and tasks.idx, the id index. */
+    @Value("${task.mapped.directory}")
+    private String               directory;
+
+    /** Slots, and ids in the index, of a new store; both double when full. */
+    @Value("${task.mapped.initial.capacity}")
+    private int                  initialCapacity = 65536;
+
+    @Value("${task.mapped.force.writes}")
+    private boolean              forceWrites;
+
+    /** Tasks read per lock acquisition by exports. */
+    @Value("${task.export.fetch.size}")
+    private int                  fetchSize     = 500;
+
+    private final ReadWriteLock  lock          = new ReentrantReadWriteLock();
+
+    /** Tasks per assignee and day, guarded by lock. */
+    private final TaskCounts     counts        = new TaskCounts();
+
+    private RandomAccessFile     dataFile;
+
+    private RandomAccessFile     indexFile;
+
+    /** The counts as of the last clean close. */
+    private File                 countsFile;
+
+    private MappedByteBuffer     data;
+
+    private MappedByteBuffer     index;
+
+    private int                  capacity;
+
+    /**
+     * Selects the tasks a search returns, straight from a record.
+     */
+    private interface Filter {
+
+        boolean matches(int offset);
+    }
+
+    /**
+     * Maps the store, creating it if needed, and repairs it if it was not
+     * closed cleanly.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        File dir = new File(directory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, "tasks.dat");
+        dataFile = new RandomAccessFile(file, "rw");
+        indexFile = new RandomAccessFile(new File(dir, "tasks.idx"), "rw");
+        countsFile = new File(dir, "tasks.counts");
+        boolean created = dataFile.length() == 0;
+        if (created) {
+            dataFile.setLength(HEADER_SIZE + (long) initialCapacity * RECORD_SIZE);
+            indexFile.setLength((long) initialCapacity * 4);
+        }
+        data = map(dataFile);
+        index = map(indexFile);
+        capacity = (data.capacity() - HEADER_SIZE) / RECORD_SIZE;
+
+        if (created) {
+            data.putInt(H_MAGIC, MAGIC);
+            data.putInt(H_FORMAT, FORMAT);
+            data.putLong(H_NEXT_ID, 1);
+            data.putLong(H_MODIFIED, System.currentTimeMillis());
+        }
+        else if (data.getInt(H_MAGIC) != MAGIC || data.getInt(H_FORMAT) < 1 || data.getInt(H_FORMAT) > FORMAT) {
+            throw new IOException(file + " is not a task store of format " + FORMAT);
+        }
+        else if (data.get(H_CLEAN) == 0) {
+            recover(file);
+        }
+        boolean counted = created || data.get(H_CLEAN) != 0 && data.getInt(H_FORMAT) == FORMAT && readCounts();
+        if (!counted) {
+            recount();
+        }
+        data.putInt(H_FORMAT, FORMAT);
+        data.put(H_CLEAN, (byte) 0);
+        data.force();
+        LOG.info("Mapped {} tasks in {}", data.getInt(H_LIVE), file);
+    }
+
+    /**
+     * Forces everything to the disk and marks the store as cleanly closed.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (data == null) {
+                return;
+            }
+            try {
+                writeCounts();
+            }
+            catch (IOException e) {
+                LOG.warn("Could not write " + countsFile + "; the next start counts the tasks again", e);
+            }
+            index.force();
+            data.force();
+            data.put(H_CLEAN, (byte) 1);
+            data.force();
+            data = null;
+            index = null;
+            dataFile.close();
+            indexFile.close();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile file) throws IOException {
+        return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+    }
+
+    /**
+     * Drops torn records and, of two records of one id left by an
+     * interrupted update, the older; then rebuilds the index and free list.
+     */
+    private void recover(File file) throws IOException {
+        LOG.warn("{} was not closed cleanly; checking its records", file);
+        for (int i = 0; i < index.capacity(); i += 4) {
+            index.putInt(i, 0);
+        }
+        long nextId = data.getLong(H_NEXT_ID);
+        long sequence = data.getLong(H_SEQUENCE);
+        int highWater = 0;
+        int dropped = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            if (data.get(offset + R_STATE) != LIVE) {
+                continue;
+            }
+            if (data.getInt(offset + R_CRC) != crc(offset)) {
+                data.put(offset + R_STATE, FREE);
+                dropped++;
+                continue;
+            }
+            long id = data.getLong(offset + R_ID);
+            int other = slotOf(id);
+            if (other >= 0 && data.getLong(offset(other) + R_SEQUENCE) > data.getLong(offset + R_SEQUENCE)) {
+                data.put(offset + R_STATE, FREE);
+                continue;
+            }
+            if (other >= 0) {
+                data.put(offset(other) + R_STATE, FREE);
+            }
+            setSlot(id, slot);
+            nextId = Math.max(nextId, id + 1);
+            sequence = Math.max(sequence, data.getLong(offset + R_SEQUENCE));
+            highWater = slot + 1;
+        }
+
+        int freeHead = 0;
+        for (int slot = highWater - 1; slot >= 0; slot--) {
+            int offset = offset(slot);
+            if (data.get(offset + R_STATE) != LIVE) {
+                data.putInt(offset + R_NEXT_FREE, freeHead);
+                freeHead = slot + 1;
+            }
+        }
+        data.putInt(H_FREE_HEAD, freeHead);
+        data.putInt(H_HIGH_WATER, highWater);
+        data.putLong(H_NEXT_ID, nextId);
+        data.putLong(H_SEQUENCE, sequence);
+        bump();
+        if (dropped > 0) {
+            LOG.warn("Dropped {} torn records from {}", dropped, file);
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private int crc(int offset) {
+        CRC32 crc = new CRC32();
+        for (int i = R_ID; i < RECORD_SIZE; i++) {
+            crc.update(data.get(offset + i));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return the slot of a task, or -1 if there is no task with that id
+     */
+    private int slotOf(long id) {
+        if (id <= 0 || id * 4 + 4 > index.capacity()) {
+            return -1;
+        }
+        return index.getInt((int) (id * 4)) - 1;
+    }
+
+    private void setSlot(long id, int slot) throws IOException {
+        if (id * 4 + 4 > index.capacity()) {
+            long length = index.capacity();
+            while (id * 4 + 4 > length) {
+                length *= 2;
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The task store has run out of ids");
+            }
+            indexFile.setLength(length);
+            index = map(indexFile);
+        }
+        index.putInt((int) (id * 4), slot + 1);
+    }
+
+    /**
+     * Counts the live records again, in total and into counts.
+     */
+    private void recount() {
+        counts.clear();
+        int count = 0;
+        for (int slot = 0; slot < data.getInt(H_HIGH_WATER); slot++) {
+            int offset = offset(slot);
+            if (data.get(offset + R_STATE) == LIVE) {
+                counts.add(getString(offset + R_ASSIGNEE), getDate(offset), 1);
+                count++;
+            }
+        }
+        data.putInt(H_LIVE, count);
+    }
+
+    /**
+     * Reads back the counts written by {@link #writeCounts()}.
+     * @return false if they are missing, damaged, or of another data
+     *         version than the store
+     */
+    private boolean readCounts() {
+        if (!countsFile.isFile()) {
+            return false;
+        }
+        try {
+            byte[] bytes = new byte[(int) countsFile.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(countsFile));
+            try {
+                in.readFully(bytes);
+            }
+            finally {
+                in.close();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, Math.max(bytes.length - 4, 0));
+            if (bytes.length < 20 || ByteBuffer.wrap(bytes).getInt(bytes.length - 4) != (int) crc.getValue()) {
+                LOG.warn("{} is damaged; counting the tasks again", countsFile);
+                return false;
+            }
+            in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readLong() != data.getLong(H_VERSION)) {
+                return false;
+            }
+            counts.clear();
+            for (int i = in.readInt(); i > 0; i--) {
+                counts.add(in.readUTF(), null, in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                counts.add(null, new Date(in.readLong()), in.readInt());
+            }
+            return true;
+        }
+        catch (IOException e) {
+            LOG.warn("Could not read " + countsFile + "; counting the tasks again", e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the counts, stamped with the data version and followed by a
+     * CRC32 of the rest, for the next clean start.
+     */
+    private void writeCounts() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(data.getLong(H_VERSION));
+        out.writeInt(counts.getByAssignee().size());
+        for (Map.Entry<String, Integer> entry : counts.getByAssignee().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(counts.getByDay().size());
+        for (Map.Entry<Date, Integer> entry : counts.getByDay().entrySet()) {
+            out.writeLong(entry.getKey().getTime());
+            out.writeInt(entry.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        FileOutputStream file = new FileOutputStream(countsFile);
+        try {
+            bytes.writeTo(file);
+            file.getFD().sync();
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Takes a slot off the free list, or the first never used one, doubling
+     * the file when there is none.
+     */
+    private int allocateSlot() throws IOException {
+        int head = data.getInt(H_FREE_HEAD);
+        if (head != 0) {
+            data.putInt(H_FREE_HEAD, data.getInt(offset(head - 1) + R_NEXT_FREE));
+            return head - 1;
+        }
+        int slot = data.getInt(H_HIGH_WATER);
+        if (slot == capacity) {
+            if (capacity == MAX_SLOTS) {
+                throw new IllegalStateException("The task store is full at " + capacity + " tasks");
+            }
+            capacity = (int) Math.min((long) capacity * 2, MAX_SLOTS);
+            dataFile.setLength(HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            data = map(dataFile);
+        }
+        data.putInt(H_HIGH_WATER, slot + 1);
+        return slot;
+    }
+
+    private void freeSlot(int slot) {
+        int offset = offset(slot);
+        data.put(offset + R_STATE, FREE);
+        data.putInt(offset + R_NEXT_FREE, data.getInt(H_FREE_HEAD));
+        data.putInt(H_FREE_HEAD, slot + 1);
+    }
+
+    /**
+     * Writes a task to a fresh slot, then points its id there and frees the
+     * slot it was in. The state byte goes last, so a record is only live
+     * once complete.
+     */
+    private void store(long id, Task task) throws IOException {
+        byte[] name = encode("taskName", task.getTaskName(), NAME_BYTES);
+        byte[] assignee = encode("assignee", task.getAssignee(), ASSIGNEE_BYTES);
+        byte[] description = encode("description", task.getDescription(), DESCRIPTION_BYTES);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(R_ID, id);
+        long sequence = data.getLong(H_SEQUENCE) + 1;
+        record.putLong(R_SEQUENCE, sequence);
+        record.putLong(R_DATE, task.getDate() == null ? NO_DATE : task.getDate().getTime());
+        putString(record, R_NAME, name);
+        putString(record, R_ASSIGNEE, assignee);
+        putString(record, R_DESCRIPTION, description);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), R_ID, RECORD_SIZE - R_ID);
+        record.putInt(R_CRC, (int) crc.getValue());
+
+        int old = slotOf(id);
+        int slot = allocateSlot();
+        int offset = offset(slot);
+        record.position(R_CRC);
+        data.position(offset + R_CRC);
+        data.put(record);
+        data.put(offset + R_STATE, LIVE);
+        data.putLong(H_SEQUENCE, sequence);
+        setSlot(id, slot);
+        if (old >= 0) {
+            counts.add(getString(offset(old) + R_ASSIGNEE), getDate(offset(old)), -1);
+            freeSlot(old);
+        }
+        else {
+            data.putInt(H_LIVE, data.getInt(H_LIVE) + 1);
+        }
+        counts.add(task.getAssignee(), task.getDate(), 1);
+    }
+
+    /**
+     * Checks that a task fits in a record, so a batch fails before any of
+     * it is written.
+     */
+    private static void checkFits(Collection<Task> tasks) {
+        for (Task task : tasks) {
+            encode("taskName", task.getTaskName(), NAME_BYTES);
+            encode("assignee", task.getAssignee(), ASSIGNEE_BYTES);
+            encode("description", task.getDescription(), DESCRIPTION_BYTES);
+        }
+    }
+
+    private static byte[] encode(String property, String value, int maxBytes) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        if (bytes.length > maxBytes) {
+            throw new IllegalArgumentException("Task " + property + " is longer than " + maxBytes + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer record, int offset, byte[] bytes) {
+        if (bytes == null) {
+            record.put(offset, (byte) NULL_LENGTH);
+        }
+        else {
+            record.put(offset, (byte) bytes.length);
+            record.position(offset + 1);
+            record.put(bytes);
+        }
+    }
+
+    private String getString(int offset) {
+        int length = data.get(offset) & 0xFF;
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(offset + 1 + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    private boolean stringEquals(int offset, byte[] bytes) {
+        if ((data.get(offset) & 0xFF) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (data.get(offset + 1 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Date getDate(int offset) {
+        long date = data.getLong(offset + R_DATE);
+        return date == NO_DATE ? null : new Date(date);
+    }
+
+    private Task taskAt(int offset) {
+        Task task = new Task();
+        task.setID(data.getLong(offset + R_ID));
+        task.setTaskName(getString(offset + R_NAME));
+        task.setAssignee(getString(offset + R_ASSIGNEE));
+        task.setDescription(getString(offset + R_DESCRIPTION));
+        task.setDate(getDate(offset));
+        return task;
+    }
+
+    private TaskView viewAt(int offset) {
+        return new TaskView(data.getLong(offset + R_ID), getString(offset + R_NAME), getString(offset + R_ASSIGNEE), getString(offset + R_DESCRIPTION),
+                getDate(offset));
+    }
+
+    /**
+     * Raises the data version and, with forceWrites, forces the write to the
+     * disk.
+     */
+    private void written() {
+        bump();
+        if (forceWrites) {
+            index.force();
+            data.force();
+        }
+    }
+
+    private void bump() {
+        data.putLong(H_VERSION, data.getLong(H_VERSION) + 1);
+        data.putLong(H_MODIFIED, System.currentTimeMillis());
+    }
+
+    /**
+     * Takes the next id for a new task.
+     */
+    private long nextId() {
+        long id = data.getLong(H_NEXT_ID);
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The task store has run out of ids");
+        }
+        data.putLong(H_NEXT_ID, id + 1);
+        return id;
+    }
+
+    @Override
+    public void addTask(Task task) {
+        addTasks(Collections.singletonList(task));
+    }
+
+    @Override
+    public void addTasks(Collection<Task> tasks) {
+        checkFits(tasks);
+        lock.writeLock().lock();
+        try {
+            for (Task task : tasks) {
+                long id = nextId();
+                store(id, task);
+                task.setID(id);
+            }
+            written();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not grow the task store", e);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The store has no archive; tasks stay until they are removed, so a
+     * scheduled archiver finds nothing to move.
+     * @return 0
+     */
+    @Override
+    public int archiveTasks(Date before, int limit) {
+        return 0;
+    }
+
+    /**
+     * Copies the tasks out fetchSize at a time, and calls the callback
+     * between copies, so writers only wait for one copy at a time.
+     */
+    @Override
+    public void exportTasks(TaskCallback callback) throws IOException {
+        long id = 0;
+        List<Task> tasks = new ArrayList<Task>(fetchSize);
+        do {
+            tasks.clear();
+            lock.readLock().lock();
+            try {
+                long nextId = data.getLong(H_NEXT_ID);
+                while (tasks.size() < fetchSize && ++id < nextId) {
+                    int slot = slotOf(id);
+                    if (slot >= 0) {
+                        tasks.add(taskAt(offset(slot)));
+                    }
+                }
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+            for (Task task : tasks) {
+                callback.processTask(task);
+            }
+        }
+        while (!tasks.isEmpty());
+    }
+
+    @Override
+    public TaskPage findByAssignee(String assignee, Long cursor, int limit, TaskPage.Direction direction) {
+        final byte[] bytes = assignee.getBytes(UTF8);
+        return seek(new Filter() {
+
+            @Override
+            public boolean matches(int offset) {
+                return stringEquals(offset + R_ASSIGNEE, bytes);
+            }
+        }, cursor, limit, direction);
+    }
+
+    @Override
+    public TaskPage findByDateRange(Date from, Date to, Date cursorDate, Long cursor, int limit, TaskPage.Direction direction) {
+        long min = from == null ? Long.MIN_VALUE : from.getTime();
+        long max = to == null ? Long.MAX_VALUE : to.getTime();
+        DateKeyset<Integer> keyset = new DateKeyset<Integer>(cursorDate, cursor, direction, limit);
+        DataVersion version;
+        List<TaskView> views = new ArrayList<TaskView>(limit + 1);
+        lock.readLock().lock();
+        try {
+            version = new DataVersion(data.getLong(H_VERSION), new Date(data.getLong(H_MODIFIED)));
+            long nextId = data.getLong(H_NEXT_ID);
+            for (long id = 1; id < nextId; id++) {
+                int slot = slotOf(id);
+                if (slot >= 0) {
+                    long date = data.getLong(offset(slot) + R_DATE);
+                    if (date != NO_DATE && date >= min && date <= max && keyset.wants(date, id)) {
+                        keyset.offer(date, id, slot);
+                    }
+                }
+            }
+            for (int slot : keyset.nearest()) {
+                views.add(viewAt(offset(slot)));
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return keyset.page(views, version);
+    }
+
+    @Override
+    public DataVersion getDataVersion() {
+        lock.readLock().lock();
+        try {
+            return new DataVersion(data.getLong(H_VERSION), new Date(data.getLong(H_MODIFIED)));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TaskSummary getTaskSummary() {
+        lock.readLock().lock();
+        try {
+            return counts.toSummary();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Task getTaskByID(Long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot < 0 ? null : taskAt(offset(slot));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TaskView getTaskView(Long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(id);
+            return slot < 0 ? null : viewAt(offset(slot));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> listTask() {
+        lock.readLock().lock();
+        try {
+            List<Task> tasks = new ArrayList<Task>();
+            long nextId = data.getLong(H_NEXT_ID);
+            for (long id = 1; id < nextId; id++) {
+                int slot = slotOf(id);
+                if (slot >= 0) {
+                    tasks.add(taskAt(offset(slot)));
+                }
+            }
+            return tasks;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return an empty page, as nothing is ever archived
+     */
+    @Override
+    public TaskPage listArchive(Long cursor, int limit, TaskPage.Direction direction) {
+        return new TaskPage(Collections.<TaskView> emptyList(), false, false, getDataVersion());
+    }
+
+    @Override
+    public TaskPage listTask(Long cursor, int limit, TaskPage.Direction direction) {
+        return seek(null, cursor, limit, direction);
+    }
+
+    /**
+     * Walks the ids from the cursor until limit + 1 tasks match.
+     * @param filter the condition, or null for all tasks
+     */
+    private TaskPage seek(Filter filter, Long cursor, int limit, TaskPage.Direction direction) {
+        boolean previous = direction == TaskPage.Direction.PREVIOUS;
+        List<TaskView> views = new ArrayList<TaskView>(limit + 1);
+        DataVersion version;
+        lock.readLock().lock();
+        try {
+            version = new DataVersion(data.getLong(H_VERSION), new Date(data.getLong(H_MODIFIED)));
+            long nextId = data.getLong(H_NEXT_ID);
+            long id = cursor != null ? cursor : previous ? nextId : 0;
+            int step = previous ? -1 : 1;
+            // one extra row tells us whether there is anything beyond this page
+            for (id += step; id > 0 && id < nextId && views.size() <= limit; id += step) {
+                int slot = slotOf(id);
+                if (slot >= 0 && (filter == null || filter.matches(offset(slot)))) {
+                    views.add(viewAt(offset(slot)));
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        boolean more = views.size() > limit;
+        if (more) {
+            views = views.subList(0, limit);
+        }
+        if (previous) {
+            Collections.reverse(views);
+            return new TaskPage(views, cursor != null, more, version);
+        }
+        return new TaskPage(views, more, cursor != null, version);
+    }
+
+    @Override
+    public int patchTask(Long id, Map<String, Object> fields) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(id);
+            if (slot < 0) {
+                return 0;
+            }
+            if (fields.isEmpty()) {
+                return 1;
+            }
+            Task task = taskAt(offset(slot));
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                if ("taskName".equals(field.getKey())) {
+                    task.setTaskName((String) field.getValue());
+                }
+                else if ("assignee".equals(field.getKey())) {
+                    task.setAssignee((String) field.getValue());
+                }
+                else if ("description".equals(field.getKey())) {
+                    task.setDescription((String) field.getValue());
+                }
+                else if ("date".equals(field.getKey())) {
+                    task.setDate((Date) field.getValue());
+                }
+                else {
+                    throw new IllegalArgumentException("Task property " + field.getKey() + " cannot be patched");
+                }
+            }
+            store(id, task);
+            written();
+            return 1;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not grow the task store", e);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Task readTask(long id) {
+        return getTaskByID(id);
+    }
+
+    @Override
+    public boolean removeTask(Long id) {
+        return removeTasks(Collections.singletonList(id)) > 0;
+    }
+
+    @Override
+    public int removeTasks(Collection<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            int deleted = 0;
+            for (Long id : ids) {
+                int slot = slotOf(id);
+                if (slot >= 0) {
+                    index.putInt((int) (id * 4), 0);
+                    counts.add(getString(offset(slot) + R_ASSIGNEE), getDate(offset(slot)), -1);
+                    freeSlot(slot);
+                    data.putInt(H_LIVE, data.getInt(H_LIVE) - 1);
+                    deleted++;
+                }
+            }
+            if (deleted > 0) {
+                written();
+            }
+            return deleted;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The counts are kept in memory, from tasks.counts or a count of the
+     * records at open.
+     */
+    @Override
+    public TaskSummary rebuildTaskSummary() {
+        lock.writeLock().lock();
+        try {
+            recount();
+            return counts.toSummary();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Like JdbcTaskManager, saves a task without an id as a new one and
+     * ignores one whose id is not in the store.
+     */
+    @Override
+    public void updateTask(Task task) {
+        if (task.getTaskID() == null) {
+            addTask(task);
+        }
+        else {
+            updateTasks(Arrays.asList(task));
+        }
+    }
+
+    @Override
+    public void updateTasks(Collection<Task> tasks) {
+        checkFits(tasks);
+        lock.writeLock().lock();
+        try {
+            for (Task task : tasks) {
+                if (slotOf(task.getTaskID()) >= 0) {
+                    store(task.getTaskID(), task);
+                }
+            }
+            written();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not grow the task store", e);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public void setForceWrites(boolean forceWrites) {
+        this.forceWrites = forceWrites;
+    }
+
+    public void setInitialCapacity(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+}
@@ -0,0 +1,186 @@
+package task.tasks;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Moves the tasks that started more than maxAgeDays days ago to
+ * TASK_ARCHIVE, chunkSize tasks per transaction with a pause after each,
+ * so no run holds many locks or much undo at once and other writers get
+ * their turn. Scheduled from servlet-context.xml; every run logs how many
+ * tasks it moved and how long it took.
+ */
+@ManagedResource(objectName = "task:type=TaskArchiver", description = "Moves aged tasks to the archive")
+public class TaskArchiver {
+
+    private static final Logger LOG              = LoggerFactory.getLogger(TaskArchiver.class);
+
+    private TaskManager         taskManager;
+
+    private boolean             enabled;
+
+    private int                 maxAgeDays       = 365;
+
+    private int                 chunkSize        = 500;
+
+    private long                chunkPauseMillis = 100;
+
+    /** Keeps an archiveNow from overlapping a scheduled run. */
+    private final AtomicBoolean running          = new AtomicBoolean();
+
+    private final AtomicLong    runs             = new AtomicLong();
+
+    private final AtomicLong    failures         = new AtomicLong();
+
+    private final AtomicLong    totalMoved       = new AtomicLong();
+
+    private volatile Date       lastRun;
+
+    private volatile int        lastRunMoved;
+
+    private volatile long       lastRunMillis;
+
+    /**
+     * The scheduled run; does nothing unless enabled.
+     */
+    public void run() {
+        if (enabled) {
+            archiveNow();
+        }
+    }
+
+    /**
+     * Archives chunk after chunk until one comes back short. A failed chunk
+     * rolls back alone and ends the run; the next run picks up from there.
+     * @return the number of tasks moved, or -1 if a run was already going on
+     */
+    @ManagedOperation(description = "Archives the aged tasks now, even if scheduled runs are disabled; returns the tasks moved")
+    public int archiveNow() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        Date before = cutoff();
+        long start = System.currentTimeMillis();
+        int moved = 0;
+        int chunks = 0;
+        try {
+            int count;
+            do {
+                count = taskManager.archiveTasks(before, chunkSize);
+                moved += count;
+                chunks++;
+                if (count == chunkSize && chunkPauseMillis > 0) {
+                    Thread.sleep(chunkPauseMillis);
+                }
+            } while (count == chunkSize);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            failures.incrementAndGet();
+            LOG.error("Archiving stopped at a failed chunk", e);
+        }
+        finally {
+            long millis = System.currentTimeMillis() - start;
+            lastRun = new Date(start);
+            lastRunMoved = moved;
+            lastRunMillis = millis;
+            totalMoved.addAndGet(moved);
+            runs.incrementAndGet();
+            running.set(false);
+            LOG.info("Archived {} tasks dated before {} in {} ms, {} chunks", new Object[] { moved, before, millis, chunks });
+        }
+        return moved;
+    }
+
+    /**
+     * @return midnight maxAgeDays days ago
+     */
+    private Date cutoff() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, -maxAgeDays);
+        return calendar.getTime();
+    }
+
+    @ManagedAttribute(description = "Tasks moved per transaction")
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @ManagedAttribute(description = "Runs that stopped at a failed chunk")
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @ManagedAttribute(description = "Start of the last run")
+    public Date getLastRun() {
+        return lastRun;
+    }
+
+    @ManagedAttribute(description = "Milliseconds the last run took")
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    @ManagedAttribute(description = "Tasks the last run moved")
+    public int getLastRunMoved() {
+        return lastRunMoved;
+    }
+
+    @ManagedAttribute(description = "Days after its start date a task is archived")
+    public int getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    @ManagedAttribute(description = "Runs so far")
+    public long getRuns() {
+        return runs.get();
+    }
+
+    @ManagedAttribute(description = "Tasks moved by all runs")
+    public long getTotalMoved() {
+        return totalMoved.get();
+    }
+
+    @ManagedAttribute(description = "Whether the scheduled runs archive anything")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setChunkPauseMillis(long chunkPauseMillis) {
+        this.chunkPauseMillis = chunkPauseMillis;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setMaxAgeDays(int maxAgeDays) {
+        this.maxAgeDays = maxAgeDays;
+    }
+
+    /**
+     * @param taskManager moves the tasks, normally the one the web tier uses
+     */
+    public void setTaskManager(TaskManager taskManager) {
+        this.taskManager = taskManager;
+    }
+}
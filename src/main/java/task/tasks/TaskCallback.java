@@ -0,0 +1,18 @@
+package task.tasks;
+
+import java.io.IOException;
+
+import task.domain.Task;
+
+/**
+ * Receives tasks one at a time from {@link TaskManager#exportTasks(TaskCallback)}.
+ */
+public interface TaskCallback {
+
+    /**
+     * @param task the next task; it is detached once this method returns and
+     * must not be kept
+     * @throws IOException if the task cannot be written out
+     */
+    public void processTask(Task task) throws IOException;
+}
@@ -0,0 +1,199 @@
+package task.tasks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import task.domain.TaskCounts;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
+
+/**
+ * The task counts kept in TASK_COUNT_ASSIGNEE and TASK_COUNT_DAY, one row
+ * per assignee and per start day. Every write changes them in its own
+ * transaction, so reading the summary costs one row per group rather than
+ * one per task. Writers for the same assignee or day queue on its row; the
+ * rows of one change are updated in key order, so writers never deadlock
+ * on them.
+ */
+@Repository
+public class TaskCounters {
+
+    private static final Logger LOG               = LoggerFactory.getLogger(TaskCounters.class);
+
+    private static final String UPDATE_ASSIGNEE   = "UPDATE TASK_COUNT_ASSIGNEE SET TASKS = TASKS + ? WHERE ASSIGNEE = ?";
+
+    private static final String INSERT_ASSIGNEE   = "INSERT INTO TASK_COUNT_ASSIGNEE (ASSIGNEE, TASKS) VALUES (?, ?)";
+
+    private static final String UPDATE_DAY        = "UPDATE TASK_COUNT_DAY SET TASKS = TASKS + ? WHERE D_DATE = ?";
+
+    private static final String INSERT_DAY        = "INSERT INTO TASK_COUNT_DAY (D_DATE, TASKS) VALUES (?, ?)";
+
+    /** Ids bound into one IN list; Oracle accepts at most 1000. */
+    private static final int    MAX_IN_LIST       = 500;
+
+    private JdbcTemplate        jdbcTemplate;
+
+    /** Whether the database takes SELECT ... FOR UPDATE; HSQLDB 1.8 does not. */
+    private volatile Boolean    selectForUpdate;
+
+    public TaskCounters() {
+    }
+
+    @Autowired
+    public TaskCounters(@Qualifier("dataSource") DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Reads the assignee and date of tasks about to be changed or deleted,
+     * locking their rows where the database can, so no other writer changes
+     * what they are counted under before the current transaction ends.
+     * @return views with just the id, assignee and date of the tasks found
+     */
+    public Map<Long, TaskView> lock(Collection<Long> ids) {
+        final Map<Long, TaskView> tasks = new LinkedHashMap<Long, TaskView>();
+        List<Long> remaining = new ArrayList<Long>(ids);
+        String forUpdate = isSelectForUpdate() ? " FOR UPDATE" : "";
+        for (int from = 0; from < remaining.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = remaining.subList(from, Math.min(from + MAX_IN_LIST, remaining.size()));
+            StringBuilder sql = new StringBuilder("SELECT TASK_ID, ASSIGNEE, D_DATE FROM TASK WHERE TASK_ID IN (?");
+            for (int i = 1; i < chunk.size(); i++) {
+                sql.append(", ?");
+            }
+            jdbcTemplate.query(sql.append(')').append(forUpdate).toString(), chunk.toArray(), new RowCallbackHandler() {
+
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    long id = rs.getLong(1);
+                    tasks.put(id, new TaskView(id, null, rs.getString(2), null, rs.getDate(3)));
+                }
+            });
+        }
+        return tasks;
+    }
+
+    private boolean isSelectForUpdate() {
+        if (selectForUpdate == null) {
+            selectForUpdate = jdbcTemplate.execute(new ConnectionCallback<Boolean>() {
+
+                @Override
+                public Boolean doInConnection(Connection con) throws SQLException {
+                    return con.getMetaData().supportsSelectForUpdate();
+                }
+            });
+        }
+        return selectForUpdate;
+    }
+
+    /**
+     * Adds a change to the counts as part of the current transaction, which
+     * must be a read-write one.
+     */
+    public void apply(TaskCounts delta) {
+        for (Map.Entry<String, Integer> count : delta.getByAssignee().entrySet()) {
+            change(UPDATE_ASSIGNEE, INSERT_ASSIGNEE, count.getKey(), Types.VARCHAR, count.getValue());
+        }
+        for (Map.Entry<Date, Integer> count : delta.getByDay().entrySet()) {
+            change(UPDATE_DAY, INSERT_DAY, new java.sql.Date(count.getKey().getTime()), Types.DATE, count.getValue());
+        }
+    }
+
+    private void change(String update, String insert, Object key, int keyType, int delta) {
+        Object[] arguments = new Object[] { delta, key };
+        int[] types = new int[] { Types.INTEGER, keyType };
+        if (jdbcTemplate.update(update, arguments, types) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(insert, new Object[] { key, delta }, new int[] { keyType, Types.INTEGER });
+        }
+        catch (DuplicateKeyException e) {
+            // another transaction added the row since the update missed it
+            jdbcTemplate.update(update, arguments, types);
+        }
+    }
+
+    /**
+     * @return the counts, leaving out groups that have come down to zero
+     */
+    public TaskSummary read() {
+        return read("SELECT ASSIGNEE, TASKS FROM TASK_COUNT_ASSIGNEE WHERE TASKS <> 0", "SELECT D_DATE, TASKS FROM TASK_COUNT_DAY WHERE TASKS <> 0");
+    }
+
+    private TaskSummary read(String byAssignee, String byDay) {
+        final TaskCounts counts = new TaskCounts();
+        jdbcTemplate.query(byAssignee, new RowCallbackHandler() {
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                counts.add(rs.getString(1), null, rs.getInt(2));
+            }
+        });
+        jdbcTemplate.query(byDay, new RowCallbackHandler() {
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                counts.add(null, rs.getDate(1), rs.getInt(2));
+            }
+        });
+        return counts.toSummary();
+    }
+
+    /**
+     * Recounts both tables from TASK, as part of the current transaction,
+     * to repair any drift. The days are grouped here rather than in SQL, as
+     * an Oracle DATE may carry a time of day.
+     * @return the new counts
+     */
+    public TaskSummary rebuild() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.update("DELETE FROM TASK_COUNT_ASSIGNEE");
+        jdbcTemplate.update("DELETE FROM TASK_COUNT_DAY");
+        TaskSummary summary = read("SELECT ASSIGNEE, COUNT(*) FROM TASK WHERE ASSIGNEE IS NOT NULL GROUP BY ASSIGNEE",
+                "SELECT D_DATE, COUNT(*) FROM TASK WHERE D_DATE IS NOT NULL GROUP BY D_DATE");
+        insert(INSERT_ASSIGNEE, new ArrayList<Map.Entry<?, Integer>>(summary.getByAssignee().entrySet()), Types.VARCHAR);
+        insert(INSERT_DAY, new ArrayList<Map.Entry<?, Integer>>(summary.getByDay().entrySet()), Types.DATE);
+        LOG.info("Recounted {} assignees and {} days in {} ms", new Object[] { summary.getByAssignee().size(), summary.getByDay().size(),
+                System.currentTimeMillis() - start });
+        return summary;
+    }
+
+    private void insert(String sql, final List<Map.Entry<?, Integer>> counts, final int keyType) {
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+
+            @Override
+            public int getBatchSize() {
+                return counts.size();
+            }
+
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Object key = counts.get(i).getKey();
+                ps.setObject(1, key instanceof Date ? new java.sql.Date(((Date) key).getTime()) : key, keyType);
+                ps.setInt(2, counts.get(i).getValue());
+            }
+        });
+    }
+}
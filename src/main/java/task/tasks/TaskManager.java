@@ -1,27 +1,165 @@
 package task.tasks;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.transaction.annotation.Transactional;
 
+import task.domain.DataVersion;
 import task.domain.Task;
+import task.domain.TaskPage;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
 
 public interface TaskManager {
     @Transactional
     public void addTask(Task task);
 
+    /**
+     * Inserts many tasks in one transaction using JDBC batches.
+     * @param tasks the new tasks; their ids are assigned on return
+     */
     @Transactional
-    public Task getTaskByID(Integer id);
+    public void addTasks(Collection<Task> tasks);
+
+    /**
+     * Moves the oldest tasks dated before a day from TASK to TASK_ARCHIVE in
+     * one transaction; callers keep each call small so its locks and undo
+     * stay small too.
+     * @param before first start date not archived
+     * @param limit most tasks moved
+     * @return the number of tasks moved; fewer than limit once none are left
+     */
+    @Transactional
+    public int archiveTasks(Date before, int limit);
+
+    /**
+     * Streams every task, in id order, to the callback without keeping them
+     * in memory.
+     * @param callback receives each task
+     * @throws IOException if the callback fails to write a task
+     */
+    @Transactional(readOnly = true)
+    public void exportTasks(TaskCallback callback) throws IOException;
+
+    /**
+     * Seeks one page of the tasks assigned to someone; backed by the
+     * (ASSIGNEE, TASK_ID) index.
+     * @param assignee the assignee, matched exactly
+     * @see #listTask(Long, int, TaskPage.Direction)
+     */
+    @Transactional(readOnly = true)
+    public TaskPage findByAssignee(String assignee, Long cursor, int limit, TaskPage.Direction direction);
+
+    /**
+     * Seeks one page of the tasks starting within a date range, ordered by
+     * start date and then id, so the (D_DATE, TASK_ID) index serves both the
+     * range and the cursor. Tasks without a start date are not included.
+     * @param from first start date included, or null for no lower bound
+     * @param to last start date included, or null for no upper bound
+     * @param cursorDate the start date of the cursor task, from
+     *            TaskPage.getNextCursorDate or getPreviousCursorDate
+     * @param cursor the id of the cursor task; the first or last page if
+     *            it or cursorDate is null
+     * @see #listTask(Long, int, TaskPage.Direction)
+     */
+    @Transactional(readOnly = true)
+    public TaskPage findByDateRange(Date from, Date to, Date cursorDate, Long cursor, int limit, TaskPage.Direction direction);
+
+    /**
+     * @return the version of the tasks, raised by every write; may lag
+     *         behind writes made elsewhere by a moment
+     */
+    public DataVersion getDataVersion();
+
+    @Transactional(readOnly = true)
+    public Task getTaskByID(Long id);
+
+    /**
+     * Reads the task counts per assignee and per start day from counters
+     * that every write keeps up to date, so the cost grows with the number
+     * of assignees and days, not of tasks.
+     */
+    @Transactional(readOnly = true)
+    public TaskSummary getTaskSummary();
+
+    /**
+     * @return a detached copy of the task, or null if there is none
+     */
+    @Transactional(readOnly = true)
+    public TaskView getTaskView(Long id);
 
     @Transactional(readOnly = true)
     public List<Task> listTask();
 
+    /**
+     * Seeks one page of the archived tasks, by id like the task list.
+     * @see #listTask(Long, int, TaskPage.Direction)
+     */
+    @Transactional(readOnly = true)
+    public TaskPage listArchive(Long cursor, int limit, TaskPage.Direction direction);
+
+    /**
+     * Seeks one page of tasks from the given cursor using the TASK_ID key,
+     * so the cost of a page does not grow with its position in the table.
+     * @param cursor task id to seek from, or null to start at either end
+     * @param limit maximum number of tasks on the page
+     * @param direction whether to read the tasks after or before the cursor
+     * @return the page, in ascending id order
+     */
+    @Transactional(readOnly = true)
+    public TaskPage listTask(Long cursor, int limit, TaskPage.Direction direction);
+
+    /**
+     * Updates only the given fields of a task, with a single statement and
+     * without reading the task first.
+     * @param id the task id
+     * @param fields new values keyed by property name: taskName, assignee,
+     * description or date
+     * @return the number of tasks updated, 0 if the task does not exist
+     */
+    @Transactional
+    public int patchTask(Long id, Map<String, Object> fields);
+
     @Transactional
-    public Task readTask(int id);
+    public Task readTask(long id);
 
+    /**
+     * Deletes a task with a single statement, without loading it first;
+     * only its assignee and date are read, for the summary counters.
+     * @param id the task id
+     * @return true if the task existed
+     */
     @Transactional
-    public void removeTask(Integer id);
+    public boolean removeTask(Long id);
+
+    /**
+     * Deletes many tasks with as few statements as the IN-list limit allows.
+     * @param ids the task ids
+     * @return the number of tasks deleted
+     */
+    @Transactional
+    public int removeTasks(Collection<Long> ids);
+
+    /**
+     * Recounts the summary from the tasks themselves, repairing any drift
+     * of the counters, for example after tasks were changed outside this
+     * application.
+     * @return the new counts
+     */
+    @Transactional
+    public TaskSummary rebuildTaskSummary();
 
     @Transactional
     public void updateTask(Task task);
+
+    /**
+     * Updates many existing tasks in one transaction using JDBC batches.
+     * @param tasks the tasks to write back, each with its id set
+     */
+    @Transactional
+    public void updateTasks(Collection<Task> tasks);
 }
@@ -0,0 +1,97 @@
+package task.tasks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import task.domain.DataVersion;
+
+/**
+ * The data version kept in the single TASK_VERSION row, which every node
+ * raises in the transaction of each write. Writes therefore queue on that
+ * row, but only from their first statement to their commit.
+ */
+@Repository
+public class TaskVersion {
+
+    private static final String SELECT = "SELECT VERSION, MODIFIED FROM TASK_VERSION WHERE ID = 1";
+
+    private static final String BUMP   = "UPDATE TASK_VERSION SET VERSION = VERSION + 1, MODIFIED = ? WHERE ID = 1";
+
+    private static final RowMapper<DataVersion> MAPPER = new RowMapper<DataVersion>() {
+
+        @Override
+        public DataVersion mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new DataVersion(rs.getLong(1), rs.getTimestamp(2));
+        }
+    };
+
+    private JdbcTemplate         jdbcTemplate;
+
+    /** Milliseconds latest() may answer from memory; 0 reads every time. */
+    @Value("${task.version.cache.millis}")
+    private long                 cacheMillis = 1000;
+
+    private volatile DataVersion cached;
+
+    private volatile long        cachedAt;
+
+    public TaskVersion() {
+    }
+
+    @Autowired
+    public TaskVersion(@Qualifier("dataSource") DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Raises the version as part of the current transaction, which must be
+     * a read-write one.
+     */
+    public void bump() {
+        if (jdbcTemplate.update(BUMP, new Timestamp(System.currentTimeMillis())) != 1) {
+            throw new IllegalStateException("TASK_VERSION has no row with ID 1");
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(int status) {
+                cachedAt = 0;
+            }
+        });
+    }
+
+    /**
+     * Reads the version on the connection of the current transaction, so it
+     * matches the data read there.
+     */
+    public DataVersion current() {
+        return jdbcTemplate.queryForObject(SELECT, MAPPER);
+    }
+
+    /**
+     * @return the version, at most cacheMillis old unless raised by this
+     *         node since
+     */
+    public DataVersion latest() {
+        long now = System.currentTimeMillis();
+        DataVersion version = cached;
+        if (version == null || now - cachedAt >= cacheMillis) {
+            version = current();
+            cached = version;
+            cachedAt = now;
+        }
+        return version;
+    }
+}
@@ -0,0 +1,469 @@
+package task.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import task.domain.Task;
+import task.journal.Journal;
+import task.journal.TaskRecords;
+
+/**
+ * A bounded queue of new tasks and the thread that stores them. The thread
+ * waits until batchSize tasks are queued or flushIntervalMillis has passed
+ * since the first one, then stores them all with one
+ * {@link TaskManager#addTasks} call.
+ * <p>
+ * With durability WRITE or SYNC every queued task is also appended to a
+ * journal, followed after each stored batch by a checkpoint with the number
+ * of journaled tasks stored so far. On start the tasks after the last
+ * checkpoint are stored before anything else. A crash between storing a
+ * batch and writing its checkpoint stores that batch twice.
+ * <p>
+ * The journal is emptied whenever everything in it is stored. Under steady
+ * traffic that may never happen, so once it has grown past compactBytes a
+ * checkpoint instead rewrites it with just the tasks still queued.
+ */
+@ManagedResource(objectName = "task:type=WriteBehind", description = "Write-behind queue of new tasks")
+public class WriteBehindQueue {
+
+    /**
+     * What a queued task survives.
+     */
+    public enum Durability {
+        /** Nothing; queued tasks are lost if the process dies. */
+        NONE,
+        /** A crash of the process: tasks are journaled, without forcing the disk. */
+        WRITE,
+        /** A crash of the machine: every journal append is forced to the disk. */
+        SYNC
+    }
+
+    /**
+     * A queued task and whether it made it into the journal.
+     */
+    private static class Entry {
+
+        final Task task;
+
+        boolean    journaled;
+
+        Entry(Task task) {
+            this.task = task;
+        }
+    }
+
+    private static final Logger  LOG                 = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private static final byte    TASK_RECORD         = 1;
+
+    private static final byte    CHECKPOINT          = 2;
+
+    /** Longest pause between attempts to store a batch that failed. */
+    private static final long    MAX_BACKOFF         = 30000;
+
+    /** Attempts at each remaining batch when stopping with the database down. */
+    private static final int     ATTEMPTS_ON_STOP    = 3;
+
+    private TaskManager          delegate;
+
+    private int                  capacity            = 10000;
+
+    private int                  batchSize           = 500;
+
+    private long                 flushIntervalMillis = 200;
+
+    private long                 offerTimeoutMillis  = 1000;
+
+    private Durability           durability          = Durability.WRITE;
+
+    private File                 journalFile;
+
+    private long                 compactBytes        = 4 << 20;
+
+    private BlockingQueue<Entry> queue;
+
+    /** Room left for tasks queued or in the batch being stored. */
+    private Semaphore            room;
+
+    private Journal              journal;
+
+    /** Guards the journal and the two counts below. */
+    private final Object         journalLock         = new Object();
+
+    /** Tasks in the journal file, and how many of them have been stored. */
+    private long                 journaled;
+
+    private long                 journalStored;
+
+    private final AtomicLong     enqueued            = new AtomicLong();
+
+    private final AtomicLong     stored              = new AtomicLong();
+
+    private final AtomicLong     rejected            = new AtomicLong();
+
+    private final AtomicLong     batches             = new AtomicLong();
+
+    private final AtomicLong     failures            = new AtomicLong();
+
+    private volatile boolean     running;
+
+    private Thread               flusher;
+
+    /** Set once a batch is given up, after which checkpoints would skip it. */
+    private boolean              abandoned;
+
+    /**
+     * Queues a task for storing.
+     * @throws WriteBehindQueueFullException if no room frees up within the
+     *             offer timeout
+     */
+    public void add(Task task) {
+        if (!running) {
+            throw new IllegalStateException("The write-behind queue is stopped");
+        }
+        try {
+            // waited for outside the journal lock, which the flusher needs to checkpoint
+            if (!room.tryAcquire(offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                throw new WriteBehindQueueFullException("The write-behind queue has been full for " + offerTimeoutMillis + " ms");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteBehindQueueFullException("Interrupted while waiting for room in the write-behind queue");
+        }
+        Entry entry = new Entry(task);
+        if (journal == null) {
+            enqueue(entry);
+            return;
+        }
+        // queue and journal in the same order, so checkpoints can count
+        synchronized (journalLock) {
+            enqueue(entry);
+            try {
+                journal.append(TaskRecords.toRecord(TASK_RECORD, task), durability == Durability.SYNC);
+                entry.journaled = true;
+                journaled++;
+            }
+            catch (IOException e) {
+                LOG.error("Could not journal a queued task; it will be stored, but would not survive a crash", e);
+            }
+        }
+    }
+
+    /**
+     * Queues an entry that room has been reserved for, so never blocks.
+     */
+    private void enqueue(Entry entry) {
+        queue.add(entry);
+        enqueued.incrementAndGet();
+    }
+
+    /**
+     * Stores the tasks left in the journal by the last run, then starts the
+     * flusher thread.
+     */
+    public void start() throws IOException {
+        queue = new ArrayBlockingQueue<Entry>(capacity);
+        room = new Semaphore(capacity);
+        if (durability != Durability.NONE) {
+            journal = new Journal(journalFile);
+            recover();
+        }
+        running = true;
+        flusher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "task-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private void recover() throws IOException {
+        // left by a crash while compacting, before it replaced the journal
+        getCompactFile().delete();
+        List<byte[]> records = journal.readAll();
+        List<Task> tasks = new ArrayList<Task>();
+        long checkpoint = 0;
+        for (byte[] record : records) {
+            if (record[0] == CHECKPOINT) {
+                checkpoint = TaskRecords.open(record).readLong();
+            }
+            else {
+                tasks.add(TaskRecords.read(TaskRecords.open(record)));
+            }
+        }
+        List<Task> pending = tasks.subList((int) Math.min(checkpoint, tasks.size()), tasks.size());
+        if (!pending.isEmpty()) {
+            LOG.info("Storing {} tasks left in {}", pending.size(), journal.getFile());
+            delegate.addTasks(new ArrayList<Task>(pending));
+        }
+        journal.truncate();
+    }
+
+    /**
+     * Stops taking tasks, stores the queued ones and closes the journal.
+     */
+    public void close() throws IOException, InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.join();
+        }
+        if (journal != null) {
+            synchronized (journalLock) {
+                journal.close();
+            }
+        }
+    }
+
+    private void flushLoop() {
+        List<Entry> batch = new ArrayList<Entry>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    Entry next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                if (store(batch)) {
+                    checkpoint(batch);
+                }
+            }
+            catch (InterruptedException e) {
+                // only close() stops the loop, once the queue is empty
+            }
+            room.release(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stores a batch, retrying with growing pauses while the database
+     * refuses it. The queue fills up meanwhile, which pushes back on callers.
+     * @return false if the batch was given up because the queue is stopping
+     */
+    private boolean store(List<Entry> batch) throws InterruptedException {
+        List<Task> tasks = new ArrayList<Task>(batch.size());
+        for (Entry entry : batch) {
+            tasks.add(entry.task);
+        }
+        long backoff = flushIntervalMillis;
+        for (int attempt = 1;; attempt++) {
+            try {
+                delegate.addTasks(tasks);
+                stored.addAndGet(tasks.size());
+                batches.incrementAndGet();
+                return true;
+            }
+            catch (RuntimeException e) {
+                failures.incrementAndGet();
+                if (!running && attempt >= ATTEMPTS_ON_STOP) {
+                    LOG.error("Giving up on " + tasks.size() + " queued tasks while stopping; journaled ones are stored on the next start", e);
+                    synchronized (journalLock) {
+                        abandoned = true;
+                    }
+                    return false;
+                }
+                LOG.error("Could not store " + tasks.size() + " queued tasks; retrying in " + backoff + " ms", e);
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+            }
+        }
+    }
+
+    /**
+     * Records that a batch is stored: empties the journal if nothing in it
+     * is still queued, compacts it if it is too big, otherwise appends a
+     * checkpoint.
+     */
+    private void checkpoint(List<Entry> batch) {
+        if (journal == null) {
+            return;
+        }
+        synchronized (journalLock) {
+            if (abandoned) {
+                return;
+            }
+            for (Entry entry : batch) {
+                if (entry.journaled) {
+                    journalStored++;
+                }
+            }
+            try {
+                if (journalStored == journaled) {
+                    journal.truncate();
+                    journaled = 0;
+                    journalStored = 0;
+                }
+                else if (journal.size() < compactBytes || !compact()) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+                    DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeByte(CHECKPOINT);
+                    out.writeLong(journalStored);
+                    journal.append(bytes.toByteArray(), durability == Durability.SYNC);
+                }
+            }
+            catch (IOException e) {
+                LOG.error("Could not checkpoint the write-behind journal; a crash now would store some tasks twice", e);
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with one of the journaled tasks still queued,
+     * which under the journal lock are all that are not stored. The new
+     * journal is written aside and renamed over the old one, so a crash
+     * leaves one or the other whole.
+     * @return false if the journal could not be replaced, and is unchanged
+     */
+    private boolean compact() throws IOException {
+        File compactFile = getCompactFile();
+        Journal compacted = new Journal(compactFile);
+        long pending = 0;
+        try {
+            compacted.truncate();
+            for (Entry entry : queue) {
+                if (entry.journaled) {
+                    compacted.append(TaskRecords.toRecord(TASK_RECORD, entry.task), false);
+                    pending++;
+                }
+            }
+            compacted.sync();
+        }
+        finally {
+            compacted.close();
+        }
+        journal.close();
+        boolean replaced = compactFile.renameTo(journalFile);
+        journal = new Journal(journalFile);
+        if (!replaced) {
+            LOG.warn("Could not rename {} to {}; the journal keeps growing", compactFile, journalFile);
+            compactFile.delete();
+            return false;
+        }
+        LOG.debug("Compacted {} to {} pending tasks", journalFile, pending);
+        journaled = pending;
+        journalStored = 0;
+        return true;
+    }
+
+    private File getCompactFile() {
+        return new File(journalFile.getPath() + ".compact");
+    }
+
+    @ManagedAttribute(description = "Stored batches")
+    public long getBatches() {
+        return batches.get();
+    }
+
+    @ManagedAttribute(description = "Most tasks queued or being stored")
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @ManagedAttribute(description = "What queued tasks survive: NONE, WRITE or SYNC")
+    public String getDurabilityName() {
+        return durability.name();
+    }
+
+    @ManagedAttribute(description = "Tasks accepted into the queue")
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    @ManagedAttribute(description = "Failed attempts to store a batch")
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @ManagedAttribute(description = "Bytes in the journal")
+    public long getJournalBytes() throws IOException {
+        synchronized (journalLock) {
+            return journal == null ? 0 : journal.size();
+        }
+    }
+
+    @ManagedAttribute(description = "Tasks waiting to be stored")
+    public int getQueueSize() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @ManagedAttribute(description = "Tasks turned away because the queue stayed full")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute(description = "Tasks stored")
+    public long getStored() {
+        return stored.get();
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param compactBytes size past which the journal is compacted while
+     *            tasks in it are still queued
+     */
+    public void setCompactBytes(long compactBytes) {
+        this.compactBytes = compactBytes;
+    }
+
+    /**
+     * @param delegate stores the batches
+     */
+    public void setDelegate(TaskManager delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void setJournalFile(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+}
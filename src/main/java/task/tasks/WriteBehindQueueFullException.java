@@ -0,0 +1,18 @@
+package task.tasks;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the write-behind queue stays full for longer than the offer
+ * timeout, so that callers back off instead of piling up in memory.
+ */
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "Too many tasks waiting to be stored; try again shortly")
+public class WriteBehindQueueFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WriteBehindQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,147 @@
+package task.tasks;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import task.domain.DataVersion;
+import task.domain.Task;
+import task.domain.TaskPage;
+import task.domain.TaskSummary;
+import task.domain.TaskView;
+
+/**
+ * A TaskManager that answers addTask as soon as the task is queued in a
+ * {@link WriteBehindQueue}, which stores it with others in a later batch.
+ * Everything else goes straight to the delegate. Selected with
+ * task.manager=writeBehindTaskManager.
+ * <p>
+ * A queued task has no id yet and does not show up in reads until its
+ * batch is stored, normally within the queue's flush interval.
+ */
+@Transactional(propagation = Propagation.SUPPORTS)
+public class WriteBehindTaskManager implements TaskManager {
+
+    private TaskManager      delegate;
+
+    private WriteBehindQueue queue;
+
+    @Override
+    public void addTask(Task task) {
+        queue.add(task);
+    }
+
+    @Override
+    public void addTasks(Collection<Task> tasks) {
+        delegate.addTasks(tasks);
+    }
+
+    @Override
+    public int archiveTasks(Date before, int limit) {
+        return delegate.archiveTasks(before, limit);
+    }
+
+    @Override
+    public void exportTasks(TaskCallback callback) throws IOException {
+        delegate.exportTasks(callback);
+    }
+
+    @Override
+    public TaskPage findByAssignee(String assignee, Long cursor, int limit, TaskPage.Direction direction) {
+        return delegate.findByAssignee(assignee, cursor, limit, direction);
+    }
+
+    @Override
+    public TaskPage findByDateRange(Date from, Date to, Date cursorDate, Long cursor, int limit, TaskPage.Direction direction) {
+        return delegate.findByDateRange(from, to, cursorDate, cursor, limit, direction);
+    }
+
+    @Override
+    public DataVersion getDataVersion() {
+        return delegate.getDataVersion();
+    }
+
+    @Override
+    public Task getTaskByID(Long id) {
+        return delegate.getTaskByID(id);
+    }
+
+    /**
+     * Tasks still in the queue are counted once they are stored.
+     */
+    @Override
+    public TaskSummary getTaskSummary() {
+        return delegate.getTaskSummary();
+    }
+
+    @Override
+    public TaskView getTaskView(Long id) {
+        return delegate.getTaskView(id);
+    }
+
+    @Override
+    public List<Task> listTask() {
+        return delegate.listTask();
+    }
+
+    @Override
+    public TaskPage listArchive(Long cursor, int limit, TaskPage.Direction direction) {
+        return delegate.listArchive(cursor, limit, direction);
+    }
+
+    @Override
+    public TaskPage listTask(Long cursor, int limit, TaskPage.Direction direction) {
+        return delegate.listTask(cursor, limit, direction);
+    }
+
+    @Override
+    public int patchTask(Long id, Map<String, Object> fields) {
+        return delegate.patchTask(id, fields);
+    }
+
+    @Override
+    public Task readTask(long id) {
+        return delegate.readTask(id);
+    }
+
+    @Override
+    public boolean removeTask(Long id) {
+        return delegate.removeTask(id);
+    }
+
+    @Override
+    public int removeTasks(Collection<Long> ids) {
+        return delegate.removeTasks(ids);
+    }
+
+    @Override
+    public TaskSummary rebuildTaskSummary() {
+        return delegate.rebuildTaskSummary();
+    }
+
+    /**
+     * @param delegate serves everything but addTask
+     */
+    public void setDelegate(TaskManager delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setQueue(WriteBehindQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public void updateTask(Task task) {
+        delegate.updateTask(task);
+    }
+
+    @Override
+    public void updateTasks(Collection<Task> tasks) {
+        delegate.updateTasks(tasks);
+    }
+}
@@ -0,0 +1,81 @@
+package task.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a CSV import: how many rows were read and stored, and why the
+ * rejected ones were rejected.
+ */
+public class ImportReport {
+
+    /**
+     * The validation messages of one rejected row.
+     */
+    public static class RowError {
+
+        private final int          row;
+
+        private final List<String> messages;
+
+        public RowError(int row, List<String> messages) {
+            this.row = row;
+            this.messages = messages;
+        }
+
+        public List<String> getMessages() {
+            return messages;
+        }
+
+        public int getRow() {
+            return row;
+        }
+    }
+
+    /** Rejected rows beyond this many are counted but not described. */
+    public static final int      MAX_REPORTED_ERRORS = 1000;
+
+    private final List<RowError> errors              = new ArrayList<RowError>();
+
+    private int                  rowsRead;
+
+    private int                  rowsImported;
+
+    private int                  rowsRejected;
+
+    public void addError(int row, List<String> messages) {
+        rowsRejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(row, messages));
+        }
+    }
+
+    public void addImported(int rows) {
+        rowsImported += rows;
+    }
+
+    public void addRead() {
+        rowsRead++;
+    }
+
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public int getRowsImported() {
+        return rowsImported;
+    }
+
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public boolean isTruncated() {
+        return rowsRejected > errors.size();
+    }
+}
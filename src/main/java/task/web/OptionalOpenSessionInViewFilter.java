@@ -0,0 +1,25 @@
+package task.web;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.orm.hibernate3.support.OpenSessionInViewFilter;
+
+/**
+ * An OpenSessionInViewFilter that does nothing unless its "enabled"
+ * init-param is true. The TaskManager returns fully initialized TaskViews,
+ * so by default each transaction closes its session and gives back its
+ * connection before the view is rendered.
+ */
+public class OptionalOpenSessionInViewFilter extends OpenSessionInViewFilter {
+
+    private boolean enabled;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+}
@@ -0,0 +1,56 @@
+package task.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import task.jdbc.ReadYourWrites;
+
+/**
+ * Keeps the reads of an HTTP session on the primary database for a while
+ * after the session wrote, so the user does not see a replica that has not
+ * caught up yet, e.g. on the task list a write redirects to.
+ */
+public class ReadYourWritesInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String LAST_WRITE = "task.lastWrite";
+
+    /** Milliseconds after a write during which the session reads from the primary. */
+    private long                maxLagMillis = 5000;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadYourWrites.reset();
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            Long lastWrite = (Long) session.getAttribute(LAST_WRITE);
+            if (lastWrite != null && System.currentTimeMillis() - lastWrite < maxLagMillis) {
+                ReadYourWrites.requirePrimary();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs before the view is rendered, while a new session cookie can still
+     * be sent.
+     */
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        if (ReadYourWrites.hasWritten()) {
+            request.getSession().setAttribute(LAST_WRITE, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadYourWrites.reset();
+    }
+
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+}
@@ -0,0 +1,59 @@
+package task.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import task.monitor.Timings;
+
+/**
+ * Times whole requests per method and mapped URL pattern, such as
+ * "request GET /delete/{taskID}", and the rendering of each view, such as
+ * "render home", into {@link Timings}. Set against the handler and
+ * TaskManager timings, they tell the database, validation and JSP time of
+ * a page apart.
+ */
+public class RequestTimingInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String REQUEST_START = "task.requestStart";
+
+    private static final String RENDER_START  = "task.renderStart";
+
+    private static final String VIEW_NAME     = "task.viewName";
+
+    @Autowired
+    private Timings             timings;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(REQUEST_START, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        if (modelAndView != null && modelAndView.getViewName() != null && !modelAndView.getViewName().startsWith("redirect:")) {
+            request.setAttribute(VIEW_NAME, modelAndView.getViewName());
+            request.setAttribute(RENDER_START, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        long end = System.nanoTime();
+        boolean failed = ex != null;
+        Long renderStart = (Long) request.getAttribute(RENDER_START);
+        if (renderStart != null) {
+            timings.get("render " + request.getAttribute(VIEW_NAME)).record(end - renderStart, failed);
+        }
+        Long requestStart = (Long) request.getAttribute(REQUEST_START);
+        if (requestStart != null) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            timings.get("request " + request.getMethod() + " " + (pattern != null ? pattern : request.getServletPath())).record(end - requestStart, failed);
+        }
+    }
+}
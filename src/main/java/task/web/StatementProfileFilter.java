@@ -0,0 +1,107 @@
+package task.web;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import task.jdbc.StatementProfile;
+
+/**
+ * Profiles the statements each request runs, view rendering included, and
+ * logs a summary when the request ends: at DEBUG normally, at WARN with the
+ * statements and the SQL run more than once when the request goes over one
+ * of its budgets. A budget of 0 is not checked. While the request runs, its
+ * method and URI are in the MDC as "request", so the slow statement log can
+ * show them; the summary is in the MDC as "statements" while it is logged.
+ * The budgets are init-params in web.xml.
+ */
+public class StatementProfileFilter extends OncePerRequestFilter {
+
+    private static final Logger LOG    = LoggerFactory.getLogger(StatementProfileFilter.class);
+
+    /** Executions listed in a warning. */
+    private static final int    LISTED = 50;
+
+    private boolean             enabled;
+
+    /** Most statements a request should run. */
+    private int                 maxStatements;
+
+    /** Most milliseconds a request should spend executing and fetching. */
+    private long                maxMillis;
+
+    /** Most rows a request should read or change. */
+    private long                maxRows;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        String name = request.getMethod() + " " + request.getRequestURI();
+        StatementProfile profile = StatementProfile.start();
+        MDC.put("request", name);
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            StatementProfile.stop();
+            MDC.put("statements", profile.toString());
+            try {
+                log(name, profile);
+            }
+            finally {
+                MDC.remove("statements");
+                MDC.remove("request");
+            }
+        }
+    }
+
+    private void log(String name, StatementProfile profile) {
+        long millis = profile.getExecuteMillis() + profile.getFetchMillis();
+        boolean over = maxStatements > 0 && profile.getStatements() > maxStatements || maxMillis > 0 && millis > maxMillis || maxRows > 0
+                && profile.getRows() > maxRows;
+        if (!over) {
+            LOG.debug("{}: {}", name, profile);
+            return;
+        }
+        StringBuilder details = new StringBuilder();
+        for (Map.Entry<String, Integer> repeated : profile.getRepeated()) {
+            details.append("\n  ran ").append(repeated.getValue()).append("x: ").append(repeated.getKey());
+        }
+        List<StatementProfile.Execution> executions = profile.getExecutions();
+        for (StatementProfile.Execution execution : executions.subList(0, Math.min(LISTED, executions.size()))) {
+            details.append("\n  ").append(execution);
+        }
+        LOG.warn("{} went over its statement budget of {} statements, {} ms, {} rows: {}{}", new Object[] { name, maxStatements, maxMillis, maxRows, profile,
+                details });
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setMaxMillis(long maxMillis) {
+        this.maxMillis = maxMillis;
+    }
+
+    public void setMaxRows(long maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    public void setMaxStatements(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+}
@@ -1,27 +1,54 @@
 package task.web;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.propertyeditors.CustomDateEditor;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
+import org.springframework.validation.Validator;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.SessionAttributes;
 
+import task.domain.DataVersion;
 import task.domain.Task;
+import task.domain.TaskPage;
+import task.domain.TaskView;
+import task.jdbc.ProfilingDataSource;
+import task.monitor.HibernateStatistics;
+import task.monitor.Timing;
+import task.monitor.Timings;
 import task.tasks.TaskManager;
 
 /**
@@ -32,11 +59,30 @@ import task.tasks.TaskManager;
 @RequestMapping("/")
 public class TaskController {
 
+    /** Number of tasks shown on one page of the task list. */
+    private static final int         PAGE_SIZE    = 20;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Autowired
+    @Qualifier("taskManager")
+    private TaskManager         taskManager;
+
+    @Autowired
+    @Qualifier("taskValidator")
+    private Validator           taskValidator;
+
+    @Autowired
+    private TaskImporter        taskImporter;
+
+    @Autowired
+    private Timings             timings;
+
     @Autowired
-    private TaskManager   taskManager;
+    private HibernateStatistics hibernateStatistics;
 
     @Autowired
-    private TaskValidator taskValidator;
+    private ProfilingDataSource slowStatements;
 
     public TaskController() {
     }
@@ -55,7 +101,7 @@ public class TaskController {
         taskValidator.validate(task, result);
         if (result.hasErrors()) {
             //  taskManager.addTask(task);
-            return listTask(model);
+            return listFirstPage(model);
         }
         else {
 
@@ -77,33 +123,100 @@ public class TaskController {
      */
     @RequestMapping(value = "/delete/{taskID}", method = RequestMethod.GET)
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public String deleteTask(@PathVariable("taskID") Integer taskID) {
+    public String deleteTask(@PathVariable("taskID") Long taskID) {
         taskManager.removeTask(taskID);
         return "redirect:/list";
 
     }
 
+    /**
+     * Deletes every task selected in the task list
+     * @param taskIDs ids of the selected tasks
+     * @return
+     */
+    @RequestMapping(value = "/delete", method = RequestMethod.POST)
+    public String deleteTasks(@RequestParam(value = "taskID", required = false) Long[] taskIDs) {
+        if (taskIDs != null && taskIDs.length > 0) {
+            taskManager.removeTasks(Arrays.asList(taskIDs));
+        }
+        return "redirect:/list";
+    }
+
+    /**
+     * Hibernate statistics, the slowest queries and the latest slow
+     * statements
+     * @param model
+     * @return diagnostics page
+     */
+    @RequestMapping(value = "/diagnostics", method = RequestMethod.GET)
+    public String diagnostics(Model model) {
+        model.addAttribute("statistics", hibernateStatistics);
+        model.addAttribute("slowStatements", slowStatements);
+        return "diagnostics";
+    }
+
+    /**
+     * Switches the gathering of Hibernate statistics on or off
+     * @param enabled
+     * @return
+     */
+    @RequestMapping(value = "/diagnostics/statistics", method = RequestMethod.POST)
+    public String enableStatistics(@RequestParam("enabled") boolean enabled) {
+        hibernateStatistics.setStatisticsEnabled(enabled);
+        return "redirect:/diagnostics";
+    }
+
+    /**
+     * Starts the statistics and the slow statement list afresh
+     * @return
+     */
+    @RequestMapping(value = "/diagnostics/clear", method = RequestMethod.POST)
+    public String clearDiagnostics() {
+        hibernateStatistics.clear();
+        slowStatements.clear();
+        return "redirect:/diagnostics";
+    }
+
+    /**
+     * Streams every task to the client as CSV.
+     * @param response
+     */
+    @RequestMapping(value = "/export.csv", method = RequestMethod.GET)
+    public void exportCsv(HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=tasks.csv");
+        Writer writer = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+        TaskCsvWriter csv = new TaskCsvWriter(writer);
+        csv.writeHeader();
+        taskManager.exportTasks(csv);
+        writer.flush();
+    }
+
+    /**
+     * Streams every task to the client as a JSON array.
+     * @param response
+     */
+    @RequestMapping(value = "/export.json", method = RequestMethod.GET)
+    public void exportJson(HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=tasks.json");
+        JsonGenerator generator = JSON_FACTORY.createJsonGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        generator.writeStartArray();
+        taskManager.exportTasks(new TaskJsonWriter(generator));
+        generator.writeEndArray();
+        generator.flush();
+    }
+
     /**
      * Format start date for update manager page
      * @param date
      * @return the proper date format for updating
      */
     private String fDate(Date date) {
-        String d = null;
-        String year = null;
-        String day = null;
-        String month = null;
-
         if (date == null) {
             return "";
         }
-        else {
-            d = date.toString();
-            year = d.substring(0, 4);
-            month = d.substring(5, 7);
-            day = d.substring(8, 10);
-        }
-        return month + "/" + day + "/" + year;
+        return new SimpleDateFormat("MM/dd/yyyy").format(date);
     }
 
     @ModelAttribute("task")
@@ -111,6 +224,36 @@ public class TaskController {
         return new Task();
     }
 
+    /**
+     * Imports tasks from an uploaded CSV file. The upload is read as a stream
+     * straight from the request, so it is never buffered in memory or on disk.
+     * @param request multipart request with the CSV in the "file" part
+     * @param locale
+     * @param model
+     * @return import report page
+     */
+    @RequestMapping(value = "/import", method = RequestMethod.POST)
+    public String importTasks(HttpServletRequest request, Locale locale, Model model) throws IOException, FileUploadException {
+        ImportReport report = new ImportReport();
+        if (ServletFileUpload.isMultipartContent(request)) {
+            FileItemIterator items = new ServletFileUpload().getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                if (!item.isFormField() && "file".equals(item.getFieldName())) {
+                    InputStream in = item.openStream();
+                    try {
+                        report = taskImporter.importTasks(new InputStreamReader(in, "UTF-8"), locale);
+                    }
+                    finally {
+                        in.close();
+                    }
+                }
+            }
+        }
+        model.addAttribute("importReport", report);
+        return "importResult";
+    }
+
     @InitBinder
     public void initBinder(WebDataBinder dataBinder) {
         SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
@@ -120,36 +263,180 @@ public class TaskController {
     }
 
     /**
-     * List Task Manager model
+     * List Task Manager model, one page at a time
+     * @param after id of the last task on the previous page
+     * @param before id of the first task on the following page
+     * @param afterDate start date of the after task, for a date range
+     * @param beforeDate start date of the before task, for a date range
+     * @param assignee only list the tasks of this assignee
+     * @param from only list tasks starting on or after this date
+     * @param to only list tasks starting on or before this date
+     * @param archive list the archived tasks instead, unfiltered
      * @param model
-     * @return home page 
+     * @return home page, or null with 304 Not Modified if the client's copy
+     *         has the current data version; that check reads no tasks
      */
     @RequestMapping(value = "/list", method = RequestMethod.GET)
-    public String listTask(Model model) {
-        model.addAttribute("taskList", taskManager.listTask());
+    public String listTask(@RequestParam(value = "after", required = false) Long after, @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "assignee", required = false) String assignee, @RequestParam(value = "from", required = false) Date from,
+            @RequestParam(value = "to", required = false) Date to, @RequestParam(value = "afterDate", required = false) Date afterDate,
+            @RequestParam(value = "beforeDate", required = false) Date beforeDate, @RequestParam(value = "archive", required = false) Boolean archive,
+            Locale locale, HttpServletRequest request, HttpServletResponse response, Model model) {
+        // the page differs by its query and the locale of its labels
+        String variant = request.getQueryString() + "-" + locale;
+        DataVersion latest = taskManager.getDataVersion();
+        if (notModified(request, eTag(latest, variant), latest.getModified())) {
+            response.setHeader("Cache-Control", "private, no-cache");
+            response.setHeader("ETag", eTag(latest, variant));
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+
+        DataVersion version = listPage(after, before, before != null ? beforeDate : afterDate, assignee, from, to, Boolean.TRUE.equals(archive), model).getVersion();
+        if (version != null) {
+            response.setHeader("Cache-Control", "private, no-cache");
+            response.setHeader("ETag", eTag(version, variant));
+            response.setDateHeader("Last-Modified", version.getModified().getTime());
+        }
         return "home";
     }
 
     /**
-     * 
+     * @return a strong entity tag for a variant of the task list at a data
+     *         version
+     */
+    private static String eTag(DataVersion version, String variant) {
+        return "\"" + version.getVersion() + "-" + Integer.toHexString(variant.hashCode()) + "\"";
+    }
+
+    /**
+     * Checks If-None-Match, or If-Modified-Since when there is none. Last-
+     * Modified only has whole seconds, so writes within the same second as
+     * the client's copy are only told apart by the entity tag.
+     */
+    private static boolean notModified(HttpServletRequest request, String eTag, Date modified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals(eTag) || tag.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifModifiedSince >= 0 && modified.getTime() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Adds one page of the task list or the archive, and the filter it was
+     * read with, to the model
+     * @param cursorDate start date of the cursor task, used by date ranges
+     */
+    private TaskPage listPage(Long after, Long before, Date cursorDate, String assignee, Date from, Date to, boolean archive, Model model) {
+        Long cursor = before != null ? before : after;
+        TaskPage.Direction direction = before != null ? TaskPage.Direction.PREVIOUS : TaskPage.Direction.NEXT;
+
+        TaskPage page;
+        if (archive) {
+            page = taskManager.listArchive(cursor, PAGE_SIZE, direction);
+            model.addAttribute("archive", true);
+        }
+        else if (assignee != null && assignee.trim().length() > 0) {
+            page = taskManager.findByAssignee(assignee.trim(), cursor, PAGE_SIZE, direction);
+            model.addAttribute("filterAssignee", assignee.trim());
+        }
+        else if (from != null || to != null) {
+            page = taskManager.findByDateRange(from, to, cursorDate, cursor, PAGE_SIZE, direction);
+            SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+            model.addAttribute("filterFrom", from == null ? "" : dateFormat.format(from));
+            model.addAttribute("filterTo", to == null ? "" : dateFormat.format(to));
+        }
+        else {
+            page = taskManager.listTask(cursor, PAGE_SIZE, direction);
+        }
+        model.addAttribute("taskPage", page);
+        model.addAttribute("taskList", page.getTasks());
+        return page;
+    }
+
+    /**
+     * Adds the first, unfiltered page of the task list to the model
+     * @param model
+     * @return home page
+     */
+    private String listFirstPage(Model model) {
+        listPage(null, null, null, null, null, null, false, model);
+        return "home";
+    }
+
+    /**
+     * Writes the count, errors and latency percentiles of every timed
+     * TaskManager call, handler, validation, request and view as plain text,
+     * one timing per line.
+     * @param response
+     */
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    public void metrics(HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        Writer writer = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+        for (Timing timing : timings.getAll()) {
+            writer.write(timing.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Task counts per assignee and per start day, read from the summary
+     * counters
+     * @param model
+     * @return summary page
+     */
+    @RequestMapping(value = "/summary", method = RequestMethod.GET)
+    public String summary(Model model) {
+        model.addAttribute("summary", taskManager.getTaskSummary());
+        return "summary";
+    }
+
+    /**
+     * Recounts the summary from the tasks
+     * @return
+     */
+    @RequestMapping(value = "/summary/rebuild", method = RequestMethod.POST)
+    public String rebuildSummary() {
+        taskManager.rebuildTaskSummary();
+        return "redirect:/summary";
+    }
+
+    /**
+     * Writes back only the fields the user changed on the update page,
+     * compared with the task as it was displayed.
      * 
      */
 
     @RequestMapping(value = { "/updateTask" }, method = RequestMethod.POST)
     public String update(HttpServletRequest request, @ModelAttribute("task") @Valid Task task, BindingResult result, Model model) {
-        Integer id = (Integer) request.getSession().getAttribute("id");
-        Task taskTemp = taskManager.readTask(id);
+        Long id = (Long) request.getSession().getAttribute("id");
+        TaskView original = (TaskView) request.getSession().getAttribute("original");
 
-        if (taskTemp != null) {
+        if (id != null) {
             taskValidator.validate(task, result);
             if (result.hasErrors()) {
-                model.addAttribute("update", taskTemp);
-                listTask(model);
+                model.addAttribute("update", original);
+                listFirstPage(model);
                 return "UpdateTask";
             }
             else {
-                task.setID(id);
-                taskManager.updateTask(task);
+                taskManager.patchTask(id, changedFields(original, task));
                 request.getSession().invalidate();
                 model.addAttribute("task", new Task());
 
@@ -159,6 +446,32 @@ public class TaskController {
 
     }
 
+    /**
+     * @param original the task as displayed, or null if unknown
+     * @param edited the task as submitted
+     * @return the submitted values that differ from the displayed ones
+     */
+    private Map<String, Object> changedFields(TaskView original, Task edited) {
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+        if (original == null || !equal(original.getTaskName(), edited.getTaskName())) {
+            fields.put("taskName", edited.getTaskName());
+        }
+        if (original == null || !equal(original.getAssignee(), edited.getAssignee())) {
+            fields.put("assignee", edited.getAssignee());
+        }
+        if (original == null || !equal(original.getDescription(), edited.getDescription())) {
+            fields.put("description", edited.getDescription());
+        }
+        if (original == null || !equal(original.getDate(), edited.getDate())) {
+            fields.put("date", edited.getDate());
+        }
+        return fields;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     /**
      * 
      * @param id
@@ -168,10 +481,10 @@ public class TaskController {
      */
     @RequestMapping(value = "/updates/{taskID}", method = RequestMethod.GET)
     // @ResponseStatus(HttpStatus.NO_CONTENT)
-    public String updateDisplay(@PathVariable("taskID") Integer id, HttpServletRequest request, Model model) {
-        Task tempTask;
+    public String updateDisplay(@PathVariable("taskID") Long id, HttpServletRequest request, Model model) {
+        TaskView tempTask;
 
-        tempTask = taskManager.getTaskByID(id);
+        tempTask = taskManager.getTaskView(id);
 
         model.addAttribute("taskName", tempTask.getTaskName());
         model.addAttribute("assignee", tempTask.getAssignee());
@@ -181,8 +494,9 @@ public class TaskController {
         //model.addAttribute("date", dt.format(tempTask.getDate()));
 
         request.getSession().setAttribute("id", id);
+        request.getSession().setAttribute("original", tempTask);
 
-        listTask(model);
+        listFirstPage(model);
         // model.addAttribute(tempTask);
 
         return "UpdateTask";
@@ -0,0 +1,135 @@
+package task.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads comma separated records one at a time, so an upload never has to be
+ * held in memory. Fields may be quoted with double quotes, in which case they
+ * can contain commas, line breaks and doubled quotes. A byte order mark in
+ * front of the first record is skipped.
+ * <p>
+ * Fields and records are limited in length, so that a stray quote cannot make
+ * the rest of the upload one field: a record past a limit is cut short at the
+ * next line break and reported by {@link #isTooLong()}.
+ */
+public class TaskCsvReader {
+
+    /** Characters a field may have; far more than any column holds. */
+    public static final int      MAX_FIELD_LENGTH  = 1024;
+
+    /** Characters a record may have, its separators, quotes and line break included. */
+    public static final int      MAX_RECORD_LENGTH = 4096;
+
+    private static final int     BYTE_ORDER_MARK   = '\uFEFF';
+
+    private final BufferedReader reader;
+
+    private int                  recordNumber;
+
+    private boolean              tooLong;
+
+    public TaskCsvReader(Reader reader) {
+        this.reader = new BufferedReader(reader);
+    }
+
+    /**
+     * @return the 1-based number of the record last returned by {@link #readRecord()}
+     */
+    public int getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * @return whether the record last returned by {@link #readRecord()} went
+     *         past {@link #MAX_FIELD_LENGTH} or {@link #MAX_RECORD_LENGTH}, so
+     *         that its fields are incomplete
+     */
+    public boolean isTooLong() {
+        return tooLong;
+    }
+
+    /**
+     * Reads the next record.
+     * @return the fields of the record, or null at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public String[] readRecord() throws IOException {
+        int c = reader.read();
+        if (c == BYTE_ORDER_MARK && recordNumber == 0) {
+            c = reader.read();
+        }
+        if (c == -1) {
+            return null;
+        }
+
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int length = 0;
+        tooLong = false;
+        while (true) {
+            if (++length > MAX_RECORD_LENGTH || field.length() > MAX_FIELD_LENGTH) {
+                tooLong = true;
+                skipLine(c);
+                break;
+            }
+            if (quoted) {
+                if (c == -1) {
+                    break;
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    }
+                    else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                }
+                else {
+                    field.append((char) c);
+                }
+            }
+            else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else if (c == '\r' || c == '\n' || c == -1) {
+                skipLine(c);
+                break;
+            }
+            else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        recordNumber++;
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * Reads up to and including the line break that c is, or that follows it,
+     * quoted or not.
+     */
+    private void skipLine(int c) throws IOException {
+        while (c != '\r' && c != '\n' && c != -1) {
+            c = reader.read();
+        }
+        if (c == '\r') {
+            reader.mark(1);
+            if (reader.read() != '\n') {
+                reader.reset();
+            }
+        }
+    }
+}
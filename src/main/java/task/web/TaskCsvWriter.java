@@ -0,0 +1,54 @@
+package task.web;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+
+import task.domain.Task;
+import task.tasks.TaskCallback;
+
+/**
+ * Writes tasks as CSV rows in the column order read by {@link TaskImporter},
+ * so an export can be imported again.
+ */
+public class TaskCsvWriter implements TaskCallback {
+
+    private final Writer           writer;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+
+    public TaskCsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void writeHeader() throws IOException {
+        writer.write("Task Name,Assignee,Description,Start Date\r\n");
+    }
+
+    @Override
+    public void processTask(Task task) throws IOException {
+        writeField(task.getTaskName());
+        writer.write(',');
+        writeField(task.getAssignee());
+        writer.write(',');
+        writeField(task.getDescription());
+        writer.write(',');
+        if (task.getDate() != null) {
+            writer.write(dateFormat.format(task.getDate()));
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,143 @@
+package task.web;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.ObjectError;
+import org.springframework.validation.Validator;
+
+import task.domain.Task;
+import task.tasks.TaskManager;
+
+/**
+ * Imports tasks from CSV with the columns task name, assignee, description
+ * and start date (MM/dd/yyyy). Rows are validated with the same rules as the
+ * add form and stored in fixed-size batches while the input is still being
+ * read, so the size of an import is not limited by memory.
+ */
+@Component
+public class TaskImporter {
+
+    private static final int COLUMNS = 4;
+
+    @Autowired
+    @Qualifier("taskManager")
+    private TaskManager      taskManager;
+
+    @Autowired
+    @Qualifier("taskValidator")
+    private Validator        taskValidator;
+
+    @Autowired
+    @Qualifier("validator")
+    private Validator        beanValidator;
+
+    @Autowired
+    private MessageSource    messageSource;
+
+    /** Tasks stored per transaction. */
+    @Value("${task.import.batch.size}")
+    private int              batchSize = 500;
+
+    public TaskImporter() {
+    }
+
+    /**
+     * Reads, validates and stores every row of the input.
+     * @param input CSV text, optionally starting with a header row
+     * @param locale locale for the error messages
+     * @return the rows imported and the errors of the rows rejected
+     * @throws IOException if the input cannot be read
+     */
+    public ImportReport importTasks(Reader input, Locale locale) throws IOException {
+        TaskCsvReader reader = new TaskCsvReader(input);
+        ImportReport report = new ImportReport();
+        List<Task> batch = new ArrayList<Task>(batchSize);
+
+        String[] record;
+        while ((record = reader.readRecord()) != null) {
+            if (!reader.isTooLong() && (isBlank(record) || isHeader(reader.getRecordNumber(), record))) {
+                continue;
+            }
+            report.addRead();
+
+            Task task = new Task();
+            BeanPropertyBindingResult errors = new BeanPropertyBindingResult(task, "task");
+            if (reader.isTooLong()) {
+                errors.reject("importRecordTooLong");
+            }
+            else {
+                bind(record, task, errors);
+            }
+            if (!errors.hasErrors()) {
+                beanValidator.validate(task, errors);
+                taskValidator.validate(task, errors);
+            }
+
+            if (errors.hasErrors()) {
+                List<String> messages = new ArrayList<String>();
+                for (ObjectError error : errors.getAllErrors()) {
+                    messages.add(messageSource.getMessage(error, locale));
+                }
+                report.addError(reader.getRecordNumber(), messages);
+            }
+            else {
+                batch.add(task);
+                if (batch.size() == batchSize) {
+                    store(batch, report);
+                }
+            }
+        }
+        store(batch, report);
+        return report;
+    }
+
+    private void bind(String[] record, Task task, BeanPropertyBindingResult errors) {
+        if (record.length != COLUMNS) {
+            errors.reject("importColumnCount");
+            return;
+        }
+        task.setTaskName(record[0].trim());
+        task.setAssignee(record[1].trim());
+        task.setDescription(record[2].trim());
+
+        String date = record[3].trim();
+        if (date.length() > 0) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+            dateFormat.setLenient(false);
+            try {
+                task.setDate(dateFormat.parse(date));
+            }
+            catch (ParseException e) {
+                errors.rejectValue("date", "typeMismatch");
+            }
+        }
+    }
+
+    private boolean isBlank(String[] record) {
+        return record.length == 1 && record[0].trim().length() == 0;
+    }
+
+    private boolean isHeader(int recordNumber, String[] record) {
+        return recordNumber == 1 && "taskname".equalsIgnoreCase(record[0].replace(" ", ""));
+    }
+
+    private void store(List<Task> batch, ImportReport report) {
+        if (!batch.isEmpty()) {
+            taskManager.addTasks(batch);
+            report.addImported(batch.size());
+            batch.clear();
+        }
+    }
+}
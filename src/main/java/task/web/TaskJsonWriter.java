@@ -0,0 +1,40 @@
+package task.web;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+
+import org.codehaus.jackson.JsonGenerator;
+
+import task.domain.Task;
+import task.tasks.TaskCallback;
+
+/**
+ * Writes tasks as JSON objects with Jackson's streaming generator; the caller
+ * opens and closes the enclosing array.
+ */
+public class TaskJsonWriter implements TaskCallback {
+
+    private final JsonGenerator    generator;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+    public TaskJsonWriter(JsonGenerator generator) {
+        this.generator = generator;
+    }
+
+    @Override
+    public void processTask(Task task) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("taskID", task.getTaskID());
+        generator.writeStringField("taskName", task.getTaskName());
+        generator.writeStringField("assignee", task.getAssignee());
+        generator.writeStringField("description", task.getDescription());
+        if (task.getDate() != null) {
+            generator.writeStringField("date", dateFormat.format(task.getDate()));
+        }
+        else {
+            generator.writeNullField("date");
+        }
+        generator.writeEndObject();
+    }
+}
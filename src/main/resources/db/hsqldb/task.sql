@@ -0,0 +1,63 @@
+-- HSQLDB version of DB/task.sql, run on startup when task.database=hsqldb.
+
+DROP TABLE TASK IF EXISTS;
+
+CREATE TABLE TASK
+(
+  TASK_ID      BIGINT NOT NULL,
+  TASK_NAME    VARCHAR(30),
+  ASSIGNEE     VARCHAR(30),
+  DESCRIPTION  VARCHAR(150),
+  D_DATE       DATE,
+  CONSTRAINT TASK_PK PRIMARY KEY (TASK_ID)
+);
+
+CREATE INDEX TASK_ASSIGNEE_IX ON TASK (ASSIGNEE, TASK_ID);
+CREATE INDEX TASK_D_DATE_IX ON TASK (D_DATE, TASK_ID);
+
+DROP TABLE TASK_ARCHIVE IF EXISTS;
+
+CREATE TABLE TASK_ARCHIVE
+(
+  TASK_ID      BIGINT NOT NULL,
+  TASK_NAME    VARCHAR(30),
+  ASSIGNEE     VARCHAR(30),
+  DESCRIPTION  VARCHAR(150),
+  D_DATE       DATE,
+  ARCHIVED     TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  CONSTRAINT TASK_ARCHIVE_PK PRIMARY KEY (TASK_ID)
+);
+
+DROP TABLE TASK_COUNT_ASSIGNEE IF EXISTS;
+
+CREATE TABLE TASK_COUNT_ASSIGNEE
+(
+  ASSIGNEE  VARCHAR(30) NOT NULL,
+  TASKS     INTEGER NOT NULL,
+  CONSTRAINT TASK_COUNT_ASSIGNEE_PK PRIMARY KEY (ASSIGNEE)
+);
+
+DROP TABLE TASK_COUNT_DAY IF EXISTS;
+
+CREATE TABLE TASK_COUNT_DAY
+(
+  D_DATE    DATE NOT NULL,
+  TASKS     INTEGER NOT NULL,
+  CONSTRAINT TASK_COUNT_DAY_PK PRIMARY KEY (D_DATE)
+);
+
+DROP TABLE TASK_VERSION IF EXISTS;
+
+CREATE TABLE TASK_VERSION
+(
+  ID        INTEGER NOT NULL,
+  VERSION   BIGINT NOT NULL,
+  MODIFIED  TIMESTAMP NOT NULL,
+  CONSTRAINT TASK_VERSION_PK PRIMARY KEY (ID)
+);
+
+INSERT INTO TASK_VERSION (ID, VERSION, MODIFIED) VALUES (1, 0, CURRENT_TIMESTAMP);
+
+DROP SEQUENCE ID_SEQ IF EXISTS;
+
+CREATE SEQUENCE ID_SEQ START WITH 1 INCREMENT BY 50;
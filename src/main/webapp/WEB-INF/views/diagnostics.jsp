@@ -0,0 +1,112 @@
+<%@taglib uri="http://www.springframework.org/tags" prefix="spring"%>
+<%@taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+
+<?xml version="1.0" encoding="UTF-8" ?>
+<!DOCTYPE html 
+     PUBLIC "-//W3C//DTD XHTML 1.0 Strict//EN"
+     "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd">
+
+<html xmlns="http://www.w3.org/1999/xhtml" xml:lang="en" lang="en">
+
+<head>
+<meta http-equiv="Content-Type" content="text/html; charset=UTF-8" />
+<title>The Best Task Manager</title>
+
+<!-- stylesheet for the webpage -->
+<c:url value="/resources/taskstyle.css" var="cssUrl" />
+<link rel="stylesheet" href="${cssUrl}" />
+
+</head>
+
+<body>
+
+    <div id="header1">
+        <b>Welcome</b>
+    </div>
+    <div id="main">
+        <h1 class="taskManager">Diagnostics</h1>
+        <c:url value="/diagnostics/statistics" var="statisticsURL" />
+        <form action="${statisticsURL}" method="post" id="statistics">
+            <c:choose>
+                <c:when test="${statistics.statisticsEnabled}">
+                    Hibernate statistics are on since
+                    <fmt:formatDate pattern="MMM-dd-yyyy HH:mm:ss" value="${statistics.startTime}" />
+                    <input type="hidden" name="enabled" value="false" />
+                    <input type="submit" value="SWITCH OFF" />
+                </c:when>
+                <c:otherwise>
+                    Hibernate statistics are off
+                    <input type="hidden" name="enabled" value="true" />
+                    <input type="submit" value="SWITCH ON" />
+                </c:otherwise>
+            </c:choose>
+        </form>
+        <table id="table2">
+            <tr class="tlcol">
+                <th>Counter</th>
+                <th>Value</th>
+            </tr>
+            <tbody>
+                <c:forEach items="${statistics.counters}" var="counter">
+                    <tr class="tlcol">
+                        <td>${counter.key}</td>
+                        <td>${counter.value}</td>
+                    </tr>
+                </c:forEach>
+            </tbody>
+        </table>
+        <h2>Slowest Queries</h2>
+        <table id="table3">
+            <tr class="tlcol">
+                <th>Max ms</th>
+                <th>Avg ms</th>
+                <th>Runs</th>
+                <th>Rows</th>
+                <th>Cache Hits</th>
+                <th>Query</th>
+            </tr>
+            <tbody>
+                <c:forEach items="${statistics.slowestQueries}" var="query">
+                    <tr class="tlcol">
+                        <td>${query.maxMillis}</td>
+                        <td>${query.avgMillis}</td>
+                        <td>${query.executions}</td>
+                        <td>${query.rows}</td>
+                        <td>${query.cacheHits}</td>
+                        <td><c:out value="${query.query}" /></td>
+                    </tr>
+                </c:forEach>
+            </tbody>
+        </table>
+        <h2>Slow Statements (${slowStatements.slowCount} at or over ${slowStatements.thresholdMillis} ms)</h2>
+        <table id="table4">
+            <tr class="tlcol">
+                <th>At</th>
+                <th>ms</th>
+                <th>Batch</th>
+                <th>Statement</th>
+                <th>Parameters</th>
+            </tr>
+            <tbody>
+                <c:forEach items="${slowStatements.recent}" var="statement">
+                    <tr class="tlcol">
+                        <td><fmt:formatDate pattern="MMM-dd-yyyy HH:mm:ss" value="${statement.executed}" /></td>
+                        <td>${statement.millis}</td>
+                        <td>${statement.batchSize}</td>
+                        <td><c:out value="${statement.sql}" /></td>
+                        <td>${statement.parameters}</td>
+                    </tr>
+                </c:forEach>
+            </tbody>
+        </table>
+        <c:url value="/diagnostics/clear" var="clearURL" />
+        <form action="${clearURL}" method="post" id="clear">
+            <input type="submit" value="CLEAR" />
+        </form>
+        <c:url value="/list" var="listURL" />
+        <a href="${listURL}">BACK TO TASK LIST</a>
+    </div>
+
+</body>
+</html>
@@ -96,14 +96,74 @@
             </table>
 
         </form:form>
+
+        <c:url value="import" var="importURL" />
+        <form action="${importURL}" method="post" enctype="multipart/form-data" id="form2">
+            <label for="importFile">Import CSV:</label>
+            <input type="file" id="importFile" name="file" accept=".csv,text/csv" />
+            <input id="import" type="submit" value="IMPORT" />
+        </form>
     </div>
-    
+
    
     <div id="second">
-        <h1 id="task">Task List</h1>
-        <c:if test="${!empty taskList}">
+        <c:choose>
+            <c:when test="${archive}">
+                <h1 id="task">Archived Tasks</h1>
+                <c:url value="/list" var="currentURL" />
+                <a href="${currentURL}" id="archiveToggle">CURRENT TASKS</a>
+            </c:when>
+            <c:otherwise>
+                <h1 id="task">Task List</h1>
+                <c:url value="/list" var="archiveURL">
+                    <c:param name="archive" value="true" />
+                </c:url>
+                <a href="${archiveURL}" id="archiveToggle">ARCHIVE</a>
+                <c:url value="/summary" var="summaryURL" />
+                <a href="${summaryURL}" id="summary">SUMMARY</a>
+                <c:url value="/diagnostics" var="diagnosticsURL" />
+                <a href="${diagnosticsURL}" id="diagnostics">DIAGNOSTICS</a>
+            </c:otherwise>
+        </c:choose>
+        <c:if test="${!archive}">
+        <c:url value="/list" var="filterURL" />
+        <form action="${filterURL}" method="get" id="filter">
+            <label for="filterAssignee">Assignee:</label>
+            <input class="txtbox" type="text" id="filterAssignee" name="assignee" value="<c:out value="${filterAssignee}" />" maxlength="30" />
+            <label for="filterFrom">From:</label>
+            <input class="txtbox" type="text" id="filterFrom" name="from" value="<c:out value="${filterFrom}" />" title="Date in format mm/dd/yyyy" />
+            <label for="filterTo">To:</label>
+            <input class="txtbox" type="text" id="filterTo" name="to" value="<c:out value="${filterTo}" />" title="Date in format mm/dd/yyyy" />
+            <input id="applyFilter" type="submit" value="FILTER" />
+        </form>
+        </c:if>
+        <c:if test="${archive && !empty taskList}">
+            <table id="table2">
+                <tr class="tlcol">
+                    <th>Task Name</th>
+                    <th>Assignee</th>
+                    <th>Description</th>
+                    <th>Dates</th>
+                </tr>
+                <tbody>
+                    <c:forEach items="${taskList}" var="list">
+                        <tr class="tlcol">
+                            <td><spring:escapeBody>${list.taskName}</spring:escapeBody></td>
+                            <td><spring:escapeBody>${list.assignee}</spring:escapeBody></td>
+                            <td><spring:escapeBody>${list.description}</spring:escapeBody></td>
+                            <td><fmt:formatDate pattern="MMM-dd-yyyy"
+                                    value="${list.date}" /></td>
+                        </tr>
+                    </c:forEach>
+                </tbody>
+            </table>
+        </c:if>
+        <c:if test="${!archive && !empty taskList}">
+            <c:url value="delete" var="deleteURL" />
+            <form action="${deleteURL}" method="post" id="form3">
             <table id="table2">
                 <tr class="tlcol">
+                    <th>&nbsp;</th>
                     <th>Task Name</th>
                     <th>Assignee</th>
                     <th>Description</th>
@@ -115,6 +175,7 @@
                     <c:forEach items="${taskList}" var="list">
                         <tr class="tlcol">
 
+                            <td><input type="checkbox" name="taskID" value="${list.taskID}" /></td>
                             <td><spring:escapeBody>
                             ${list.taskName}
                             </spring:escapeBody></td>
@@ -135,8 +196,46 @@
 
                 </tbody>
             </table>
+            <input id="deleteSelected" type="submit" value="DELETE SELECTED" />
+            </form>
         </c:if>
+        <div id="pager">
+            <c:if test="${taskPage.hasPrevious}">
+                <c:url value="/list" var="previousURL">
+                    <c:param name="before" value="${taskPage.previousCursor}" />
+                    <c:if test="${filterFrom != null}">
+                        <c:param name="beforeDate">
+                            <fmt:formatDate value="${taskPage.previousCursorDate}" pattern="MM/dd/yyyy" />
+                        </c:param>
+                    </c:if>
+                    <c:if test="${archive}">
+                        <c:param name="archive" value="true" />
+                    </c:if>
+                    <c:param name="assignee" value="${filterAssignee}" />
+                    <c:param name="from" value="${filterFrom}" />
+                    <c:param name="to" value="${filterTo}" />
+                </c:url>
+                <a href="${previousURL}" id="previous">PREVIOUS</a>
+            </c:if>
+            <c:if test="${taskPage.hasNext}">
+                <c:url value="/list" var="nextURL">
+                    <c:param name="after" value="${taskPage.nextCursor}" />
+                    <c:if test="${filterFrom != null}">
+                        <c:param name="afterDate">
+                            <fmt:formatDate value="${taskPage.nextCursorDate}" pattern="MM/dd/yyyy" />
+                        </c:param>
+                    </c:if>
+                    <c:if test="${archive}">
+                        <c:param name="archive" value="true" />
+                    </c:if>
+                    <c:param name="assignee" value="${filterAssignee}" />
+                    <c:param name="from" value="${filterFrom}" />
+                    <c:param name="to" value="${filterTo}" />
+                </c:url>
+                <a href="${nextURL}" id="next">NEXT</a>
+            </c:if>
+        </div>
     </div>
-    
+
 </body>
 </html>
\ No newline at end of file
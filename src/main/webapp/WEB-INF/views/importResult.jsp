@@ -0,0 +1,60 @@
+<%@taglib uri="http://www.springframework.org/tags" prefix="spring"%>
+<%@taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>
+
+<?xml version="1.0" encoding="UTF-8" ?>
+<!DOCTYPE html 
+     PUBLIC "-//W3C//DTD XHTML 1.0 Strict//EN"
+     "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd">
+
+<html xmlns="http://www.w3.org/1999/xhtml" xml:lang="en" lang="en">
+
+<head>
+<meta http-equiv="Content-Type" content="text/html; charset=UTF-8" />
+<title>The Best Task Manager</title>
+
+<!-- stylesheet for the webpage -->
+<c:url value="/resources/taskstyle.css" var="cssUrl" />
+<link rel="stylesheet" href="${cssUrl}" />
+
+</head>
+
+<body>
+
+    <div id="header1">
+        <b>Welcome</b>
+    </div>
+    <div id="main">
+        <h1 class="taskManager">Task Import</h1>
+        <p>
+            Rows read: ${importReport.rowsRead}<br />
+            Rows imported: ${importReport.rowsImported}<br />
+            Rows rejected: ${importReport.rowsRejected}
+        </p>
+        <c:if test="${!empty importReport.errors}">
+            <table id="table2">
+                <tr class="tlcol">
+                    <th>Row</th>
+                    <th>Errors</th>
+                </tr>
+                <tbody>
+                    <c:forEach items="${importReport.errors}" var="error">
+                        <tr class="tlcol">
+                            <td>${error.row}</td>
+                            <td><c:forEach items="${error.messages}" var="message">
+                                    <spring:escapeBody>${message}</spring:escapeBody>
+                                    <br />
+                                </c:forEach></td>
+                        </tr>
+                    </c:forEach>
+                </tbody>
+            </table>
+            <c:if test="${importReport.truncated}">
+                <p>Further rejected rows are counted but not listed.</p>
+            </c:if>
+        </c:if>
+        <c:url value="/list" var="listURL" />
+        <a href="${listURL}">BACK TO TASK LIST</a>
+    </div>
+
+</body>
+</html>
@@ -0,0 +1,66 @@
+<%@taglib uri="http://www.springframework.org/tags" prefix="spring"%>
+<%@taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+
+<?xml version="1.0" encoding="UTF-8" ?>
+<!DOCTYPE html 
+     PUBLIC "-//W3C//DTD XHTML 1.0 Strict//EN"
+     "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd">
+
+<html xmlns="http://www.w3.org/1999/xhtml" xml:lang="en" lang="en">
+
+<head>
+<meta http-equiv="Content-Type" content="text/html; charset=UTF-8" />
+<title>The Best Task Manager</title>
+
+<!-- stylesheet for the webpage -->
+<c:url value="/resources/taskstyle.css" var="cssUrl" />
+<link rel="stylesheet" href="${cssUrl}" />
+
+</head>
+
+<body>
+
+    <div id="header1">
+        <b>Welcome</b>
+    </div>
+    <div id="main">
+        <h1 class="taskManager">Task Summary</h1>
+        <table id="table2">
+            <tr class="tlcol">
+                <th>Assignee</th>
+                <th>Tasks</th>
+            </tr>
+            <tbody>
+                <c:forEach items="${summary.byAssignee}" var="count">
+                    <tr class="tlcol">
+                        <td><spring:escapeBody>${count.key}</spring:escapeBody></td>
+                        <td>${count.value}</td>
+                    </tr>
+                </c:forEach>
+            </tbody>
+        </table>
+        <table id="table3">
+            <tr class="tlcol">
+                <th>Start Date</th>
+                <th>Tasks</th>
+            </tr>
+            <tbody>
+                <c:forEach items="${summary.byDay}" var="count">
+                    <tr class="tlcol">
+                        <td><fmt:formatDate pattern="MMM-dd-yyyy" value="${count.key}" /></td>
+                        <td>${count.value}</td>
+                    </tr>
+                </c:forEach>
+            </tbody>
+        </table>
+        <c:url value="/summary/rebuild" var="rebuildURL" />
+        <form action="${rebuildURL}" method="post" id="rebuild">
+            <input type="submit" value="RECOUNT" />
+        </form>
+        <c:url value="/list" var="listURL" />
+        <a href="${listURL}">BACK TO TASK LIST</a>
+    </div>
+
+</body>
+</html>
@@ -0,0 +1,208 @@
+package task.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.FileSystemXmlApplicationContext;
+
+import task.domain.Task;
+import task.domain.TaskPage;
+import task.monitor.LatencyHistogram;
+import task.tasks.TaskManager;
+
+/**
+ * Times the same CRUD workload against each TaskManager on one schema.
+ * Not a unit test; run it with the application and test classpaths, e.g.
+ * <pre>
+ * java -Dtask.database=hsqldb task.bench.TaskManagerBenchmark [operations] [managers...]
+ * </pre>
+ * from the project directory. The defaults are 5000 operations and
+ * hibernateTaskManager and jdbcTaskManager; journalTaskManager and
+ * mappedTaskManager can be named too. Each manager first runs the
+ * workload once untimed to warm up. HibernateTaskManager keeps its
+ * second-level and query caches, as it does in production.
+ * <p>
+ * The workload ends with a write burst: -Dtask.bench.threads threads, 16 by
+ * default, adding operations tasks between them, with the latency of each
+ * addTask call.
+ */
+public class TaskManagerBenchmark {
+
+    private static final String ROOT_CONTEXT = "file:src/main/webapp/WEB-INF/root-context.xml";
+
+    private static final int    PAGE_SIZE    = 20;
+
+    private final TaskManager   taskManager;
+
+    private final int           operations;
+
+    private final int           threads;
+
+    private final Random        random       = new Random(42);
+
+    public TaskManagerBenchmark(TaskManager taskManager, int operations, int threads) {
+        this.taskManager = taskManager;
+        this.operations = operations;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        List<String> managers = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            managers.add(args[i]);
+        }
+        if (managers.isEmpty()) {
+            managers.add("hibernateTaskManager");
+            managers.add("jdbcTaskManager");
+        }
+
+        FileSystemXmlApplicationContext root = new FileSystemXmlApplicationContext(ROOT_CONTEXT);
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(new String[] { "task/bench/benchmark-context.xml" }, root);
+        try {
+            for (String name : managers) {
+                TaskManagerBenchmark benchmark = new TaskManagerBenchmark((TaskManager) context.getBean(name), operations, Integer.getInteger("task.bench.threads", 16));
+                benchmark.run(false);
+                System.out.println(name);
+                benchmark.run(true);
+            }
+        }
+        finally {
+            context.close();
+            root.close();
+        }
+    }
+
+    /**
+     * Inserts, reads, lists, patches and deletes operations tasks, leaving
+     * the table as it was.
+     */
+    private void run(boolean report) throws InterruptedException {
+        List<Long> ids = new ArrayList<Long>(operations);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Task task = newTask(i);
+            taskManager.addTask(task);
+            ids.add(task.getTaskID());
+        }
+        report(report, "addTask", operations, start);
+
+        List<Task> batch = new ArrayList<Task>(operations);
+        for (int i = 0; i < operations; i++) {
+            batch.add(newTask(i));
+        }
+        start = System.nanoTime();
+        taskManager.addTasks(batch);
+        report(report, "addTasks", operations, start);
+        for (Task task : batch) {
+            ids.add(task.getTaskID());
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            taskManager.getTaskView(ids.get(random.nextInt(ids.size())));
+        }
+        report(report, "getTaskView", operations, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            taskManager.listTask(ids.get(random.nextInt(ids.size())), PAGE_SIZE, TaskPage.Direction.NEXT);
+        }
+        report(report, "listTask page", operations, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            taskManager.findByAssignee("assignee" + random.nextInt(100), null, PAGE_SIZE, TaskPage.Direction.NEXT);
+        }
+        report(report, "findByAssignee", operations, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Map<String, Object> fields = new LinkedHashMap<String, Object>();
+            fields.put("description", "patched " + i);
+            taskManager.patchTask(ids.get(random.nextInt(ids.size())), fields);
+        }
+        report(report, "patchTask", operations, start);
+
+        start = System.nanoTime();
+        for (Long id : ids.subList(0, operations)) {
+            taskManager.removeTask(id);
+        }
+        report(report, "removeTask", operations, start);
+
+        start = System.nanoTime();
+        taskManager.removeTasks(ids.subList(operations, ids.size()));
+        report(report, "removeTasks", operations, start);
+
+        burst(report);
+    }
+
+    /**
+     * Adds operations tasks from many threads at once, timing each call.
+     */
+    private void burst(boolean report) throws InterruptedException {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final List<Long> ids = Collections.synchronizedList(new ArrayList<Long>(operations));
+        final CountDownLatch go = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<Thread>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int count = operations / threads + (t < operations % threads ? 1 : 0);
+            Thread writer = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        Task task = newTask(i);
+                        long begin = System.nanoTime();
+                        taskManager.addTask(task);
+                        latency.record(System.nanoTime() - begin);
+                        ids.add(task.getTaskID());
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        report(report, "addTask x" + threads, operations, start);
+        if (report) {
+            System.out.println(String.format("  %-15s p50 %.2f ms, p99 %.2f ms, max %.1f ms", "", latency.getPercentileMillis(50),
+                    latency.getPercentileMillis(99), latency.getMaxMillis()));
+        }
+        taskManager.removeTasks(ids);
+    }
+
+    private Task newTask(int i) {
+        Task task = new Task();
+        task.setTaskName("task " + i);
+        task.setAssignee("assignee" + random.nextInt(100));
+        task.setDescription("benchmark task");
+        task.setDate(new Date());
+        return task;
+    }
+
+    private void report(boolean report, String operation, int count, long start) {
+        if (report) {
+            long nanos = System.nanoTime() - start;
+            System.out.println(String.format("  %-15s %10.0f ops/s %10.1f us/op", operation, count * 1e9 / nanos, nanos / 1e3 / count));
+        }
+    }
+}
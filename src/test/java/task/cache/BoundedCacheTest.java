@@ -0,0 +1,78 @@
+package task.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() {
+        BoundedCache cache = new BoundedCache("test", 2, 0);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, cache.get("a"));
+        cache.put("c", 3);
+
+        assertNull(cache.peek("b"));
+        assertEquals(1, cache.peek("a"));
+        assertEquals(3, cache.peek("c"));
+        assertEquals(2, cache.getElementCountInMemory());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void replacingAnEntryDoesNotEvict() {
+        BoundedCache cache = new BoundedCache("test", 2, 0);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("a", 3);
+
+        assertEquals(3, cache.peek("a"));
+        assertEquals(2, cache.peek("b"));
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(3, cache.getPutCount());
+    }
+
+    @Test
+    public void noLimitKeepsEveryEntry() {
+        BoundedCache cache = new BoundedCache("test", 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(1000, cache.getElementCountInMemory());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void expiredEntriesAreAbsent() throws InterruptedException {
+        BoundedCache cache = new BoundedCache("test", 0, 1);
+        cache.put("a", 1);
+        assertEquals(1, cache.toMap().size());
+        Thread.sleep(1100);
+        cache.put("b", 2);
+
+        assertEquals(1, cache.toMap().size());
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.get("b"));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(1, cache.getElementCountInMemory());
+    }
+
+    @Test
+    public void onlyGetCountsHitsAndMisses() {
+        BoundedCache cache = new BoundedCache("test", 10, 0);
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("b");
+        cache.peek("a");
+        cache.peek("b");
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        cache.clear();
+        assertTrue(cache.toMap().isEmpty());
+    }
+}
@@ -0,0 +1,143 @@
+package task.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.EntityRegion;
+import org.hibernate.cache.Timestamper;
+import org.hibernate.cache.access.AccessType;
+import org.hibernate.cache.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.access.SoftLock;
+import org.hibernate.cache.impl.CacheDataDescriptionImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedTransactionalRegionTest {
+
+    private static final String        KEY = "task#1";
+
+    private BoundedRegionFactory       factory;
+
+    private EntityRegion               region;
+
+    private EntityRegionAccessStrategy access;
+
+    @Before
+    public void buildRegion() {
+        factory = new BoundedRegionFactory();
+        Properties properties = new Properties();
+        properties.setProperty("task.cache.default.max_entries", "100");
+        properties.setProperty("task.cache.test.ttl_seconds", "60");
+        region = factory.buildEntityRegion("test", properties, new CacheDataDescriptionImpl(true, false, null));
+        access = region.buildAccessStrategy(AccessType.READ_WRITE);
+    }
+
+    @After
+    public void stopFactory() {
+        factory.stop();
+    }
+
+    @Test
+    public void anEntryIsReadOnlyByTransactionsThatStartAfterItWasCached() {
+        long before = Timestamper.next();
+        assertTrue(access.putFromLoad(KEY, "a", before, null));
+
+        assertNull(access.get(KEY, before));
+        assertEquals("a", access.get(KEY, Timestamper.next()));
+        assertFalse("a cached entry is not loaded again", access.putFromLoad(KEY, "b", Timestamper.next(), null));
+    }
+
+    @Test
+    public void aLockedEntryIsNeitherReadNorCached() {
+        access.putFromLoad(KEY, "a", Timestamper.next(), null);
+        SoftLock lock = access.lockItem(KEY, null);
+
+        assertNull(access.get(KEY, Timestamper.next()));
+        assertFalse(access.putFromLoad(KEY, "old", Timestamper.next(), null));
+        access.unlockItem(KEY, lock);
+    }
+
+    @Test
+    public void unlockingFencesOffTransactionsThatStartedBefore() {
+        long reader = Timestamper.next();
+        SoftLock lock = access.lockItem(KEY, null);
+        long during = Timestamper.next();
+        access.unlockItem(KEY, lock);
+
+        assertFalse(access.putFromLoad(KEY, "old", reader, null));
+        assertFalse(access.putFromLoad(KEY, "old", during, null));
+        assertTrue(access.putFromLoad(KEY, "new", Timestamper.next(), null));
+    }
+
+    @Test
+    public void anEntryEvictedWhileLockedIsStillFencedOff() {
+        long reader = Timestamper.next();
+        SoftLock lock = access.lockItem(KEY, null);
+        access.evictAll();
+        access.unlockItem(KEY, lock);
+
+        assertFalse(access.putFromLoad(KEY, "old", reader, null));
+        assertTrue(access.putFromLoad(KEY, "new", Timestamper.next(), null));
+    }
+
+    @Test
+    public void onlyTheLastOfConcurrentWritersCachesItsUpdate() {
+        SoftLock first = access.lockItem(KEY, null);
+        SoftLock second = access.lockItem(KEY, null);
+
+        assertFalse(access.afterUpdate(KEY, "first", null, null, first));
+        assertNull(access.get(KEY, Timestamper.next()));
+        assertTrue(access.afterUpdate(KEY, "second", null, null, second));
+        assertEquals("second", access.get(KEY, Timestamper.next()));
+    }
+
+    @Test
+    public void removeLeavesALockInPlace() {
+        long reader = Timestamper.next();
+        SoftLock lock = access.lockItem(KEY, null);
+        access.remove(KEY);
+        access.unlockItem(KEY, lock);
+
+        assertFalse(access.putFromLoad(KEY, "old", reader, null));
+        assertTrue(region.toMap().isEmpty());
+    }
+
+    @Test
+    public void anInsertIsCachedAfterItCommits() {
+        assertFalse(access.insert(KEY, "a", null));
+        assertNull(access.get(KEY, Timestamper.next()));
+        assertTrue(access.afterInsert(KEY, "a", null));
+        assertEquals("a", access.get(KEY, Timestamper.next()));
+        assertEquals(1, region.toMap().size());
+    }
+
+    @Test
+    public void regionsAreSizedFromTheProperties() {
+        BoundedCache cache = null;
+        for (BoundedCache built : BoundedRegionFactory.getRegions()) {
+            if (built.getRegionName().equals("test")) {
+                cache = built;
+            }
+        }
+        assertEquals(100, cache.getMaxEntries());
+        assertEquals(60, cache.getTtlSeconds());
+    }
+
+    @Test(expected = CacheException.class)
+    public void transactionalAccessIsRefused() {
+        region.buildAccessStrategy(AccessType.TRANSACTIONAL);
+    }
+
+    @Test(expected = CacheException.class)
+    public void anInvalidSettingIsRefused() {
+        Properties properties = new Properties();
+        properties.setProperty("task.cache.other.max_entries", "many");
+        factory.buildEntityRegion("other", properties, new CacheDataDescriptionImpl(true, false, null));
+    }
+}
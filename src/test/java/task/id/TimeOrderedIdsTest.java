@@ -0,0 +1,135 @@
+package task.id;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class TimeOrderedIdsTest {
+
+    /** 2024-01-01T00:00:00Z. */
+    private static final long NOW = 1704067200000L;
+
+    @Test
+    public void idsAreUniqueAndIncreasePerThread() throws Exception {
+        final TimeOrderedIds ids = new TimeOrderedIds(7);
+        final int perThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<long[]> minted = Collections.synchronizedList(new ArrayList<long[]>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    long[] own = new long[perThread];
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        own[i] = ids.next();
+                    }
+                    minted.add(own);
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.size(), minted.size());
+        Set<Long> all = new HashSet<Long>();
+        for (long[] own : minted) {
+            for (int i = 0; i < own.length; i++) {
+                assertTrue("ids of one thread go down at " + i, i == 0 || own[i] > own[i - 1]);
+                assertEquals(7, TimeOrderedIds.nodeOf(own[i]));
+                all.add(own[i]);
+            }
+        }
+        assertEquals(threads.size() * perThread, all.size());
+    }
+
+    @Test
+    public void idsCarryTheirTimeAndNode() {
+        TimeOrderedIds ids = new TimeOrderedIds(TimeOrderedIds.MAX_NODE);
+        long id = ids.next(NOW);
+        assertEquals(NOW, TimeOrderedIds.millisOf(id));
+        assertEquals(TimeOrderedIds.MAX_NODE, TimeOrderedIds.nodeOf(id));
+        assertTrue(id > 0);
+        assertTrue("a later millisecond sorts after", new TimeOrderedIds(0).next(NOW + 1) > id);
+    }
+
+    @Test
+    public void aFullCounterCarriesIntoTheNextMillisecond() {
+        TimeOrderedIds ids = new TimeOrderedIds(1);
+        long previous = 0;
+        for (int i = 0; i < 4096; i++) {
+            long id = ids.next(NOW);
+            assertEquals(NOW, TimeOrderedIds.millisOf(id));
+            assertTrue(id > previous);
+            previous = id;
+        }
+        long carried = ids.next(NOW);
+        assertEquals(NOW + 1, TimeOrderedIds.millisOf(carried));
+        assertTrue(carried > previous);
+        // the next millisecond goes on from the carried id
+        assertTrue(ids.next(NOW + 1) > carried);
+    }
+
+    @Test
+    public void aClockSetBackIsRunAheadOfUntilItCatchesUp() {
+        TimeOrderedIds ids = new TimeOrderedIds(2);
+        long before = ids.next(NOW);
+        long back = ids.next(NOW - 5000);
+        assertTrue(back > before);
+        assertEquals(NOW, TimeOrderedIds.millisOf(back));
+        assertTrue("a lead of 5 s is reported", ids.isAhead());
+
+        long later = ids.next(NOW - 4000);
+        assertTrue(later > back);
+        assertTrue(ids.isAhead());
+
+        long caughtUp = ids.next(NOW + 1);
+        assertEquals(NOW + 1, TimeOrderedIds.millisOf(caughtUp));
+        assertFalse(ids.isAhead());
+    }
+
+    @Test
+    public void aSmallLeadIsNotReported() {
+        TimeOrderedIds ids = new TimeOrderedIds(3);
+        ids.next(NOW);
+        ids.next(NOW - 1000);
+        assertFalse(ids.isAhead());
+    }
+
+    @Test
+    public void oneGeneratorPerNode() {
+        assertSame(TimeOrderedIds.forNode(5), TimeOrderedIds.forNode(5));
+        assertEquals(5, TimeOrderedIds.forNode(5).getNode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodesAreTenBits() {
+        TimeOrderedIds.forNode(TimeOrderedIds.MAX_NODE + 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void timeBitsRunOutIn2081() {
+        new TimeOrderedIds(0).next(TimeOrderedIds.EPOCH + (1L << 41));
+    }
+}
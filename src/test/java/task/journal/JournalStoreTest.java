@@ -0,0 +1,178 @@
+package task.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import task.domain.Task;
+import task.domain.TaskView;
+
+public class JournalStoreTest {
+
+    private File         directory;
+
+    private JournalStore store;
+
+    @Before
+    public void open() throws IOException {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        store = reopen();
+    }
+
+    @After
+    public void delete() throws Exception {
+        store.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void replayStopsAtATornAppend() throws Exception {
+        add("a", "ann");
+        long b = add("b", "bob");
+        Map<String, Object> fields = Collections.<String, Object> singletonMap("assignee", "ann");
+        store.commit(JournalStore.Op.patch(b, fields));
+        store.close();
+        // the length and CRC of a record whose bytes never reached the disk
+        RandomAccessFile log = new RandomAccessFile(new File(directory, "tasks-0.log"), "rw");
+        try {
+            log.seek(log.length());
+            log.writeInt(40);
+            log.writeInt(12345);
+            log.write(new byte[7]);
+        }
+        finally {
+            log.close();
+        }
+
+        store = reopen();
+        assertEquals("[a, b]", names());
+        assertEquals("ann", store.get(b).getAssignee());
+        assertEquals(Integer.valueOf(2), store.getSummary().getByAssignee().get("ann"));
+        // appends follow the last intact record, so they replay too
+        add("c", "cat");
+        store.close();
+        store = reopen();
+        assertEquals("[a, b, c]", names());
+    }
+
+    @Test
+    public void openLoadsTheSnapshotThenReplaysNewerLogs() throws Exception {
+        long a = add("a", "ann");
+        long b = add("b", "bob");
+        store.snapshot();
+        assertFalse(new File(directory, "tasks-0.log").exists());
+        store.commit(JournalStore.Op.remove(a));
+        Task updated = JournalStore.toTask(store.get(b));
+        updated.setTaskName("b2");
+        store.commit(JournalStore.Op.update(updated));
+        long c = add("c", "cat");
+        long version = store.getDataVersion().getVersion();
+        store.close();
+
+        store = reopen();
+        assertTrue(new File(directory, "tasks.snapshot").exists());
+        assertNull(store.get(a));
+        assertEquals("[b2, c]", names());
+        assertEquals(version, store.getDataVersion().getVersion());
+        assertEquals(store.recount().getByAssignee(), store.getSummary().getByAssignee());
+        assertTrue("ids are not reused", store.nextId() > c);
+    }
+
+    @Test
+    public void concurrentCommitsAreAllDurable() throws Exception {
+        final int threads = 8;
+        final int perThread = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final String assignee = "user" + t;
+            Thread writer = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < perThread; i++) {
+                            long id = add(assignee + "-" + i, assignee);
+                            if (i % 10 == 0) {
+                                store.commit(JournalStore.Op.remove(id));
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(Collections.emptyList(), failures);
+        int expected = threads * (perThread - perThread / 10);
+        assertEquals(expected, store.getTaskCount());
+        assertEquals(threads * (perThread + perThread / 10), store.getRecords());
+        assertTrue(store.getCommits() <= store.getRecords());
+        assertEquals(store.recount().getByAssignee(), store.getSummary().getByAssignee());
+        List<String> before = names(store);
+        store.close();
+
+        store = reopen();
+        assertEquals(expected, store.getTaskCount());
+        assertEquals(before, names(store));
+        assertEquals(Integer.valueOf(perThread - perThread / 10), store.getSummary().getByAssignee().get("user0"));
+    }
+
+    private JournalStore reopen() throws IOException {
+        JournalStore journalStore = new JournalStore();
+        journalStore.setDirectory(directory);
+        journalStore.open();
+        return journalStore;
+    }
+
+    private long add(String name, String assignee) {
+        Task task = new Task();
+        task.setID(store.nextId());
+        task.setTaskName(name);
+        task.setAssignee(assignee);
+        task.setDate(new Date(0));
+        store.commit(JournalStore.Op.add(task));
+        return task.getTaskID();
+    }
+
+    private String names() {
+        return names(store).toString();
+    }
+
+    private static List<String> names(JournalStore store) {
+        List<String> names = new ArrayList<String>();
+        for (TaskView view : store.getTasks().values()) {
+            names.add(view.getTaskName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,93 @@
+package task.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import task.domain.TaskPage;
+import task.domain.TaskView;
+
+public class DateKeysetTest {
+
+    private static final Comparator<TaskView> ORDER = new Comparator<TaskView>() {
+
+        @Override
+        public int compare(TaskView a, TaskView b) {
+            int byDate = a.getDate().compareTo(b.getDate());
+            return byDate != 0 ? byDate : a.getTaskID().compareTo(b.getTaskID());
+        }
+    };
+
+    @Test
+    public void pagesForwardAndBackThroughEveryTask() {
+        // few dates, offered out of order, so ties are broken by id
+        List<TaskView> tasks = new ArrayList<TaskView>();
+        Random random = new Random(42);
+        for (long id = 1; id <= 500; id++) {
+            tasks.add(view(id, random.nextInt(30)));
+        }
+        Collections.shuffle(tasks, random);
+        List<TaskView> sorted = new ArrayList<TaskView>(tasks);
+        Collections.sort(sorted, ORDER);
+
+        List<TaskView> read = new ArrayList<TaskView>();
+        TaskPage page = page(tasks, null, TaskPage.Direction.NEXT, 7);
+        assertFalse(page.isHasPrevious());
+        read.addAll(page.getTasks());
+        while (page.isHasNext()) {
+            page = page(tasks, page.getTasks().get(page.getTasks().size() - 1), TaskPage.Direction.NEXT, 7);
+            assertTrue(page.isHasPrevious());
+            read.addAll(page.getTasks());
+        }
+        assertEquals(sorted, read);
+
+        read.clear();
+        page = page(tasks, null, TaskPage.Direction.PREVIOUS, 7);
+        assertFalse(page.isHasNext());
+        read.addAll(0, page.getTasks());
+        while (page.isHasPrevious()) {
+            page = page(tasks, page.getTasks().get(0), TaskPage.Direction.PREVIOUS, 7);
+            assertTrue(page.isHasNext());
+            read.addAll(0, page.getTasks());
+        }
+        assertEquals(sorted, read);
+    }
+
+    @Test
+    public void keepsNoMoreThanOneTaskBeyondThePage() {
+        DateKeyset<TaskView> keyset = new DateKeyset<TaskView>(null, null, TaskPage.Direction.NEXT, 3);
+        for (long id = 10; id >= 1; id--) {
+            assertTrue(keyset.wants(0, id));
+            keyset.offer(0, id, view(id, 0));
+        }
+        assertFalse(keyset.wants(0, 5));
+        List<TaskView> nearest = keyset.nearest();
+        assertEquals(4, nearest.size());
+        assertEquals(Long.valueOf(1), nearest.get(0).getTaskID());
+        assertEquals(Long.valueOf(4), nearest.get(3).getTaskID());
+    }
+
+    private static TaskPage page(List<TaskView> tasks, TaskView cursor, TaskPage.Direction direction, int limit) {
+        DateKeyset<TaskView> keyset = new DateKeyset<TaskView>(cursor == null ? null : cursor.getDate(), cursor == null ? null : cursor.getTaskID(),
+                direction, limit);
+        for (TaskView task : tasks) {
+            if (keyset.wants(task.getDate().getTime(), task.getTaskID())) {
+                keyset.offer(task.getDate().getTime(), task.getTaskID(), task);
+            }
+        }
+        return keyset.page(keyset.nearest(), null);
+    }
+
+    private static TaskView view(long id, int day) {
+        return new TaskView(id, "t" + id, "ann", null, new Date(day * 86400000L));
+    }
+}
@@ -0,0 +1,240 @@
+package task.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import task.domain.Task;
+import task.domain.TaskSummary;
+
+public class MappedTaskManagerTest {
+
+    /* The layout of tasks.dat, as in MappedTaskManager. */
+    private static final int   H_CLEAN     = 8;
+
+    private static final int   HEADER_SIZE = 64;
+
+    private static final int   RECORD_SIZE = 248;
+
+    private static final int   R_STATE     = 0;
+
+    private static final int   R_CRC       = 4;
+
+    private static final int   R_ID        = 8;
+
+    private static final int   R_NAME      = 32;
+
+    private File               directory;
+
+    private MappedTaskManager  store;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("mapped", "");
+        directory.delete();
+        store = open();
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        store.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void cleanOpenReadsTheCountsBack() throws IOException {
+        store.addTasks(Arrays.asList(task("a", "ann", new Date(0)), task("b", "bob", null), task("c", "ann", new Date(0))));
+        store.removeTask(2L);
+        TaskSummary before = store.getTaskSummary();
+        store.close();
+
+        store = open();
+        assertSummary(before, store.getTaskSummary());
+        assertSummary(before, store.rebuildTaskSummary());
+        assertEquals(2, store.listTask().size());
+    }
+
+    @Test
+    public void cleanOpenCountsAgainWhenTheCountsAreStale() throws IOException {
+        store.addTask(task("a", "ann", null));
+        store.close();
+        File counts = new File(directory, "tasks.counts");
+        byte[] stale = read(counts);
+        store = open();
+        store.addTask(task("b", "bob", null));
+        store.close();
+        write(counts, stale);
+
+        store = open();
+        assertEquals(Integer.valueOf(1), store.getTaskSummary().getByAssignee().get("bob"));
+    }
+
+    @Test
+    public void recoveryDropsTornRecords() throws IOException {
+        store.addTasks(Arrays.asList(task("a", "ann", null), task("b", "bob", null), task("c", "ann", null)));
+        store.close();
+        // b was torn by a crash while it was written
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "tasks.dat"), "rw");
+        try {
+            file.seek(HEADER_SIZE + RECORD_SIZE + R_NAME + 1);
+            file.writeByte('x');
+            file.seek(H_CLEAN);
+            file.writeByte(0);
+        }
+        finally {
+            file.close();
+        }
+
+        store = open();
+        assertNull(store.getTaskByID(2L));
+        assertEquals("a", store.getTaskByID(1L).getTaskName());
+        assertEquals("c", store.getTaskByID(3L).getTaskName());
+        assertEquals(Integer.valueOf(2), store.getTaskSummary().getByAssignee().get("ann"));
+        assertFalse(store.getTaskSummary().getByAssignee().containsKey("bob"));
+        store.addTask(task("d", "dan", null));
+        assertEquals("d", store.getTaskByID(4L).getTaskName());
+        assertEquals(3, store.listTask().size());
+    }
+
+    @Test
+    public void recoveryKeepsTheNewerRecordOfAnId() throws IOException {
+        store.addTasks(Arrays.asList(task("a", "ann", null), task("b", "bob", null)));
+        store.close();
+        File dataFile = new File(directory, "tasks.dat");
+        byte[] original = readRecord(dataFile, 1);
+
+        store = open();
+        Task updated = store.getTaskByID(2L);
+        updated.setTaskName("b2");
+        updated.setAssignee("ann");
+        store.updateTask(updated);
+        store.close();
+        // a crash before the update freed the slot of the old record
+        writeRecord(dataFile, 1, original);
+
+        store = open();
+        assertEquals("b2", store.getTaskByID(2L).getTaskName());
+        assertEquals(2, store.listTask().size());
+        assertEquals(Integer.valueOf(2), store.getTaskSummary().getByAssignee().get("ann"));
+        assertFalse(store.getTaskSummary().getByAssignee().containsKey("bob"));
+    }
+
+    @Test
+    public void exportCopiesEveryTaskAcrossFetches() throws IOException {
+        // more than two fetches of 500, with a removed task in the first
+        List<Task> tasks = new ArrayList<Task>();
+        for (int i = 1; i <= 1200; i++) {
+            tasks.add(task("t" + i, "ann", null));
+        }
+        store.addTasks(tasks);
+        store.removeTask(7L);
+
+        final List<Long> exported = new ArrayList<Long>();
+        store.exportTasks(new TaskCallback() {
+
+            @Override
+            public void processTask(Task task) {
+                exported.add(task.getTaskID());
+            }
+        });
+        assertEquals(1199, exported.size());
+        for (int i = 0; i < exported.size(); i++) {
+            assertEquals(Long.valueOf(i < 6 ? i + 1 : i + 2), exported.get(i));
+        }
+    }
+
+    private MappedTaskManager open() throws IOException {
+        MappedTaskManager manager = new MappedTaskManager();
+        manager.setDirectory(directory.getPath());
+        manager.setInitialCapacity(4);
+        manager.open();
+        return manager;
+    }
+
+    private static void assertSummary(TaskSummary expected, TaskSummary actual) {
+        assertEquals(expected.getByAssignee(), actual.getByAssignee());
+        assertEquals(expected.getByDay(), actual.getByDay());
+    }
+
+    private static byte[] readRecord(File dataFile, int slot) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+        try {
+            byte[] record = new byte[RECORD_SIZE];
+            file.seek(HEADER_SIZE + slot * RECORD_SIZE);
+            file.readFully(record);
+            return record;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Puts a record back in its slot as a live one, and leaves the store as
+     * if it had crashed.
+     */
+    private static void writeRecord(File dataFile, int slot, byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record, R_ID, RECORD_SIZE - R_ID);
+        assertEquals(1, record[R_STATE]);
+        assertEquals((int) crc.getValue(), ByteBuffer.wrap(record).getInt(R_CRC));
+        RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+        try {
+            file.seek(HEADER_SIZE + slot * RECORD_SIZE);
+            file.write(record);
+            file.seek(H_CLEAN);
+            file.writeByte(0);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(bytes);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static Task task(String name, String assignee, Date date) {
+        Task task = new Task();
+        task.setTaskName(name);
+        task.setAssignee(assignee);
+        task.setDate(date);
+        return task;
+    }
+}
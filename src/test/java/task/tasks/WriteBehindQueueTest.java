@@ -0,0 +1,206 @@
+package task.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import task.domain.Task;
+import task.journal.Journal;
+
+public class WriteBehindQueueTest {
+
+    private static final long    OFFER_TIMEOUT = 5000;
+
+    /** Names of the tasks the delegate has stored, in order. */
+    private final List<String>   stored        = Collections.synchronizedList(new ArrayList<String>());
+
+    /** Held until the test lets the delegate store. */
+    private final CountDownLatch storing       = new CountDownLatch(1);
+
+    private File                 journalFile;
+
+    @Before
+    public void createJournal() throws IOException {
+        journalFile = File.createTempFile("write-behind", ".journal");
+    }
+
+    @After
+    public void deleteJournal() {
+        journalFile.delete();
+    }
+
+    @Test
+    public void waitingForRoomDoesNotHoldUpCheckpoints() throws Exception {
+        final WriteBehindQueue queue = start(2, delegate(true, Integer.MAX_VALUE));
+        queue.add(task("a"));
+        awaitEmpty(queue);
+        queue.add(task("b"));
+
+        // a is being stored and b is queued, so c or d has to wait for room
+        final Throwable[] failure = new Throwable[1];
+        Thread adder = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    queue.add(task("c"));
+                    queue.add(task("d"));
+                }
+                catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        long started = System.currentTimeMillis();
+        adder.start();
+        Thread.sleep(100);
+        storing.countDown();
+        adder.join();
+
+        assertNull("A task was turned away: " + failure[0], failure[0]);
+        assertTrue("A task waited for the offer timeout", System.currentTimeMillis() - started < OFFER_TIMEOUT);
+        queue.close();
+        assertEquals("[a, b, c, d]", stored.toString());
+        assertEquals(0, queue.getRejected());
+        assertEquals(0, journalFile.length());
+    }
+
+    @Test
+    public void restartStoresTheTasksLeftAfterTheLastCheckpoint() throws Exception {
+        List<byte[]> records = stopWithTasksLeft(Long.MAX_VALUE);
+        // a, b, c and the checkpoint after a
+        assertEquals(4, records.size());
+        assertRecovered();
+    }
+
+    @Test
+    public void restartStoresTheTasksLeftInACompactedJournal() throws Exception {
+        List<byte[]> records = stopWithTasksLeft(1);
+        // a was compacted away
+        assertEquals(2, records.size());
+        assertRecovered();
+    }
+
+    /**
+     * Stores a, then lets the database fail so that b and c are still in
+     * the journal when the queue stops, and appends half a record to it, as
+     * if the process died while journaling.
+     * @return the records of the journal before the torn one
+     */
+    private List<byte[]> stopWithTasksLeft(long compactBytes) throws Exception {
+        WriteBehindQueue queue = start(10, delegate(true, 1));
+        queue.setCompactBytes(compactBytes);
+        queue.add(task("a"));
+        awaitEmpty(queue);
+        queue.add(task("b"));
+        queue.add(task("c"));
+        storing.countDown();
+        while (queue.getFailures() == 0) {
+            Thread.sleep(5);
+        }
+        queue.close();
+        assertEquals("[a]", stored.toString());
+
+        List<byte[]> records;
+        Journal journal = new Journal(journalFile);
+        try {
+            records = journal.readAll();
+        }
+        finally {
+            journal.close();
+        }
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write(new byte[10]);
+        }
+        finally {
+            file.close();
+        }
+        return records;
+    }
+
+    private void assertRecovered() throws Exception {
+        stored.clear();
+        WriteBehindQueue queue = start(10, delegate(false, Integer.MAX_VALUE));
+        assertEquals("[b, c]", stored.toString());
+        assertEquals(0, journalFile.length());
+        queue.close();
+        assertFalse(new File(journalFile.getPath() + ".compact").exists());
+    }
+
+    private WriteBehindQueue start(int capacity, TaskManager delegate) throws IOException {
+        WriteBehindQueue queue = new WriteBehindQueue();
+        queue.setDelegate(delegate);
+        queue.setCapacity(capacity);
+        queue.setBatchSize(1);
+        queue.setFlushIntervalMillis(10);
+        queue.setOfferTimeoutMillis(OFFER_TIMEOUT);
+        queue.setDurability(WriteBehindQueue.Durability.WRITE);
+        queue.setJournalFile(journalFile);
+        queue.start();
+        return queue;
+    }
+
+    /**
+     * @param hold whether addTasks waits for {@link #storing}
+     * @param storable how many tasks can be added before addTasks fails, as
+     *            if the database went down
+     * @return a TaskManager that records the names of the tasks added
+     */
+    private TaskManager delegate(final boolean hold, final int storable) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!method.getName().equals("addTasks")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                if (hold && !storing.await(OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    throw new IllegalStateException("Not let through");
+                }
+                if (stored.size() >= storable) {
+                    throw new IllegalStateException("Database down");
+                }
+                for (Object task : (Collection<?>) args[0]) {
+                    stored.add(((Task) task).getTaskName());
+                }
+                return null;
+            }
+        };
+        return (TaskManager) Proxy.newProxyInstance(TaskManager.class.getClassLoader(), new Class<?>[] { TaskManager.class }, handler);
+    }
+
+    private static void awaitEmpty(WriteBehindQueue queue) throws InterruptedException {
+        while (queue.getQueueSize() > 0) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static Task task(String name) {
+        Task task = new Task();
+        task.setTaskName(name);
+        task.setAssignee("test");
+        return task;
+    }
+}
@@ -0,0 +1,115 @@
+package task.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TaskCsvReaderTest {
+
+    @Test
+    public void readsPlainRecords() throws IOException {
+        TaskCsvReader reader = reader("a,b,c,01/02/2024\nd,,f,\n");
+        assertRecord(reader.readRecord(), "a", "b", "c", "01/02/2024");
+        assertEquals(1, reader.getRecordNumber());
+        assertRecord(reader.readRecord(), "d", "", "f", "");
+        assertEquals(2, reader.getRecordNumber());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void quotedFieldsHoldCommasQuotesAndLineBreaks() throws IOException {
+        TaskCsvReader reader = reader("\"a, b\",\"say \"\"hi\"\"\",\"one\r\ntwo\nthree\",x\nnext");
+        assertRecord(reader.readRecord(), "a, b", "say \"hi\"", "one\r\ntwo\nthree", "x");
+        assertRecord(reader.readRecord(), "next");
+        assertEquals(2, reader.getRecordNumber());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void aQuoteInsideAnUnquotedFieldIsKept() throws IOException {
+        assertRecord(reader("5\" nails,b").readRecord(), "5\" nails", "b");
+    }
+
+    @Test
+    public void everyLineBreakEndsARecord() throws IOException {
+        TaskCsvReader reader = reader("a\r\nb\rc\n\nd");
+        assertRecord(reader.readRecord(), "a");
+        assertRecord(reader.readRecord(), "b");
+        assertRecord(reader.readRecord(), "c");
+        assertRecord(reader.readRecord(), "");
+        assertRecord(reader.readRecord(), "d");
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void aByteOrderMarkBeforeTheHeaderIsSkipped() throws IOException {
+        byte[] bytes = "\uFEFFTask Name,Assignee\r\na,b\r\n".getBytes("UTF-8");
+        assertEquals((byte) 0xEF, bytes[0]);
+        TaskCsvReader reader = new TaskCsvReader(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8"));
+        assertRecord(reader.readRecord(), "Task Name", "Assignee");
+        assertRecord(reader.readRecord(), "a", "b");
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void anUnclosedQuoteStopsAtTheFieldLimit() throws IOException {
+        StringBuilder csv = new StringBuilder("a,\"never closed");
+        for (int i = 0; i < 100; i++) {
+            csv.append("\nline ").append(i).append(repeat('x', 100));
+        }
+        TaskCsvReader reader = reader(csv.toString());
+        String[] record = reader.readRecord();
+        assertTrue(reader.isTooLong());
+        assertTrue(record[record.length - 1].length() <= TaskCsvReader.MAX_FIELD_LENGTH + 1);
+
+        // the rest of the line is skipped, and reading goes on after it
+        int records = 1;
+        while ((record = reader.readRecord()) != null) {
+            assertFalse(reader.isTooLong());
+            assertTrue(record[0].startsWith("line "));
+            records++;
+        }
+        assertTrue(records > 90);
+    }
+
+    @Test
+    public void aRecordOfManyShortFieldsStopsAtTheRecordLimit() throws IOException {
+        TaskCsvReader reader = reader(repeat(',', TaskCsvReader.MAX_RECORD_LENGTH * 2) + "\r\na,b");
+        String[] record = reader.readRecord();
+        assertTrue(reader.isTooLong());
+        assertTrue(record.length <= TaskCsvReader.MAX_RECORD_LENGTH + 1);
+        assertRecord(reader.readRecord(), "a", "b");
+        assertFalse(reader.isTooLong());
+    }
+
+    @Test
+    public void aFieldUpToTheLimitIsRead() throws IOException {
+        String longest = repeat('x', TaskCsvReader.MAX_FIELD_LENGTH);
+        TaskCsvReader reader = reader("\"" + longest + "\",b\n");
+        assertRecord(reader.readRecord(), longest, "b");
+        assertFalse(reader.isTooLong());
+    }
+
+    private static TaskCsvReader reader(String csv) {
+        return new TaskCsvReader(new StringReader(csv));
+    }
+
+    private static void assertRecord(String[] record, String... fields) {
+        assertEquals(Arrays.asList(fields), Arrays.asList(record));
+    }
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}